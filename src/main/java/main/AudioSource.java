@@ -0,0 +1,10 @@
+package main;
+
+import java.io.IOException;
+
+//16 bit mono audio, pulled in chunks
+public interface AudioSource {
+
+	//reads up to length samples into buffer[offset, offset + length), returns how many were read, or -1 at the end
+	public int read(short[] buffer, int offset, int length) throws IOException;
+}
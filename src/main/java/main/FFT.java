@@ -0,0 +1,57 @@
+package main;
+
+//iterative, in place radix 2 Cooley-Tukey FFT on separate real and imaginary arrays
+// the input is put in bit reversed order, then each of the log2(N) passes combines pairs of half size transforms
+// (the same butterflies as HelperFunctions.fft, without the recursion and the Complex objects)
+//the permutation and twiddles come from the size's FFTPlan, so a transform does no trig and no setup
+//the buffers belong to the FFT and are reused by every call, so a spectrogram frame allocates nothing
+//not thread safe, use one per thread (FFTPlan.getFFT)
+public class FFT {
+
+	private final FFTPlan plan;
+	private final double[] re;
+	private final double[] im;
+
+	public FFT(int size) {
+		this(FFTPlan.of(size));
+	}
+
+	FFT(FFTPlan plan) {
+		this.plan = plan;
+		this.re = new double[plan.size()];
+		this.im = new double[plan.size()];
+	}
+
+	public int size() {
+		return plan.size();
+	}
+
+	//fill these, transform(), then read the result back from them
+	public double[] getReal() {
+		return re;
+	}
+
+	public double[] getImaginary() {
+		return im;
+	}
+
+	public double abs(int k) {
+		return Math.sqrt(re[k]*re[k] + im[k]*im[k]);
+	}
+
+	///////////////////////////////////////////////////////
+
+	public void transform() {
+		plan.transform(re, im);
+	}
+
+	//in place, re and im must be size long
+	public void transform(double[] re, double[] im) {
+		plan.transform(re, im);
+	}
+
+	//fill getReal() with size real samples, afterwards bins 0..size/2 hold the half spectrum (see FFTPlan.realTransform)
+	public void realTransform() {
+		plan.realTransform(re, im);
+	}
+}
@@ -0,0 +1,172 @@
+package main;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//everything about an FFT size that doesn't depend on the data, worked out once
+//	the bit reversal permutation, as the pairs to swap
+//	the twiddle factors exp(-2*pi*i*k/N), k < N/2 (a pass of length L uses every (N/L)th one)
+//	for real input, the plan of half the size (see realTransform)
+//plans are immutable and shared by every FFT of the same size, on any thread
+// each thread also gets its own FFT (scratch buffers) for the size, see getFFT
+public class FFTPlan {
+
+	private static final Map<Integer, FFTPlan> plans = new HashMap<Integer, FFTPlan>();
+
+	private final int size;
+	private final int[] swaps;			//i0, j0, i1, j1, ...
+	private final double[] cos;
+	private final double[] sin;
+	private final FFTPlan halfPlan;		//null for size 1
+
+	private final ThreadLocal<FFT> threadFFTs = new ThreadLocal<FFT>() {
+		@Override
+		protected FFT initialValue() {
+			return new FFT(FFTPlan.this);
+		}
+	};
+
+	private FFTPlan(int size) {
+		this.size = size;
+
+		int numberOfSwaps = 0;
+		int[] reversed = new int[size];
+		for(int i = 1, j = 0; i < size; i++) {
+			int bit = size >> 1;
+			for(; (j & bit) != 0; bit >>= 1) {
+				j ^= bit;
+			}
+			j ^= bit;
+			reversed[i] = j;
+			if(i < j) {
+				numberOfSwaps++;
+			}
+		}
+		swaps = new int[2*numberOfSwaps];
+		int s = 0;
+		for(int i = 1; i < size; i++) {
+			if(i < reversed[i]) {
+				swaps[s++] = i;
+				swaps[s++] = reversed[i];
+			}
+		}
+
+		cos = new double[size/2];
+		sin = new double[size/2];
+		for(int k = 0; k < size/2; k++) {
+			double kth = -2 * k * Math.PI / size;
+			cos[k] = Math.cos(kth);
+			sin[k] = Math.sin(kth);
+		}
+
+		halfPlan = size > 1 ? of(size/2) : null;
+	}
+
+	public static synchronized FFTPlan of(int size) {
+		if(size < 1 || (size & (size - 1)) != 0) {
+			throw new RuntimeException("N is not a power of 2");
+		}
+		FFTPlan plan = plans.get(size);
+		if(plan == null) {
+			plan = new FFTPlan(size);
+			plans.put(size, plan);
+		}
+		return plan;
+	}
+
+	///////////////////////////////////////////////////////
+
+	public int size() {
+		return size;
+	}
+
+	//this thread's FFT of this size, reused by every call on the thread
+	public FFT getFFT() {
+		return threadFFTs.get();
+	}
+
+	//in place, re and im must be size long
+	public void transform(double[] re, double[] im) {
+		int N = size;
+
+		for(int s = 0; s < swaps.length; s += 2) {
+			int i = swaps[s];
+			int j = swaps[s+1];
+			double t = re[i];
+			re[i] = re[j];
+			re[j] = t;
+			t = im[i];
+			im[i] = im[j];
+			im[j] = t;
+		}
+
+		//combine: transforms of length half into transforms of length 2*half
+		for(int length = 2, stride = N/2; length <= N; length <<= 1, stride >>= 1) {
+			int half = length >> 1;
+			for(int k = 0; k < half; k++) {
+				double wr = cos[k*stride];
+				double wi = sin[k*stride];
+				for(int even = k; even < N; even += length) {
+					int odd = even + half;
+					double tr = wr * re[odd] - wi * im[odd];
+					double ti = wr * im[odd] + wi * re[odd];
+					re[odd] = re[even] - tr;
+					im[odd] = im[even] - ti;
+					re[even] += tr;
+					im[even] += ti;
+				}
+			}
+		}
+	}
+
+	//FFT of size real values, using a complex FFT of half the size
+	// on input re holds the samples (im is ignored)
+	// on output bins 0..size/2 of re/im hold the non redundant half of the spectrum
+	//	(the rest is its mirror, X[size-k] = conj(X[k]), and is left as garbage)
+	//
+	//the even and odd samples are packed as z[m] = x[2m] + i*x[2m+1] and transformed, then
+	// X[k] = E[k] + W^k O[k] with E[k] = (Z[k] + conj(Z[M-k]))/2, O[k] = (Z[k] - conj(Z[M-k]))/2i, M = size/2
+	public void realTransform(double[] re, double[] im) {
+		if(halfPlan == null) {
+			im[0] = 0.0;
+			return;
+		}
+		int M = size/2;
+
+		for(int m = 0; m < M; m++) {
+			im[m] = re[2*m + 1];
+			re[m] = re[2*m];
+		}
+		halfPlan.transform(re, im);
+
+		//k = 0 and k = M only need Z[0]
+		double z0r = re[0];
+		double z0i = im[0];
+		re[0] = z0r + z0i;
+		im[0] = 0.0;
+		re[M] = z0r - z0i;
+		im[M] = 0.0;
+
+		//k and M-k use the same pair of Z values, so do both at once
+		for(int k = 1; k <= M/2; k++) {
+			int mk = M - k;
+			double ar = re[k];
+			double ai = im[k];
+			double cr = re[mk];
+			double ci = im[mk];
+
+			double er = 0.5 * (ar + cr);
+			double ei = 0.5 * (ai - ci);
+			double or = 0.5 * (ai + ci);
+			double oi = -0.5 * (ar - cr);
+			re[k] = er + cos[k] * or - sin[k] * oi;
+			im[k] = ei + cos[k] * oi + sin[k] * or;
+
+			if(mk != k) {
+				//same with the roles of Z[k] and Z[M-k] swapped: E[M-k] = conj(E[k]), O[M-k] = conj(O[k])
+				re[mk] = er + cos[mk] * or + sin[mk] * oi;
+				im[mk] = -ei - cos[mk] * oi + sin[mk] * or;
+			}
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package main;
+
+import java.awt.image.BufferedImage;
+
+//paints the whole network onto a canvas, a frame at a time, instead of calling Neuron.paint on every neuron
+// (see RasterPainter)
+public interface FramePainter {
+
+	//the neurons as they are at now
+	public void paint(long now, BufferedImage canvas);
+
+	//a frame taken while the network kept running (see RenderPipeline)
+	public void paint(FrameSnapshot snapshot, BufferedImage canvas);
+
+	//the canvas may have been painted by someone else since the last frame
+	public void reset();
+}
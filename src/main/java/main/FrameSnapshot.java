@@ -0,0 +1,61 @@
+package main;
+
+import java.awt.Graphics2D;
+import java.util.List;
+
+import neuron.Neuron;
+
+//the state of the network that a frame's image shows, copied out of the neurons so the network can keep running while it's painted
+//	potentials[id]: potential of neurons.get(id) at the frame
+//	weights: every neuron's input weights, in input order, neuron id's from weightStart[id] (see RenderPipeline)
+//never changed after it's taken
+public class FrameSnapshot {
+
+	private final long frameIndex;
+	private final double[] potentials;
+	private final double[] weights;
+
+	private FrameSnapshot(long frameIndex, double[] potentials, double[] weights) {
+		this.frameIndex = frameIndex;
+		this.potentials = potentials;
+		this.weights = weights;
+	}
+
+	//weightStart has neurons.size()+1 entries, the last is the total number of weights
+	public static FrameSnapshot take(List<Neuron> neurons, long frameIndex, int[] weightStart) {
+		double[] potentials = new double[neurons.size()];
+		double[] weights = new double[weightStart[neurons.size()]];
+		for(int id = 0; id < neurons.size(); id++) {
+			Neuron n = neurons.get(id);
+			potentials[id] = n.getPotential(frameIndex);
+			n.getInputWeights(weights, weightStart[id]);
+		}
+		return new FrameSnapshot(frameIndex, potentials, weights);
+	}
+
+	public long getFrameIndex() {
+		return frameIndex;
+	}
+
+	public double getPotential(int id) {
+		return potentials[id];
+	}
+
+	public double getWeight(int index) {
+		return weights[index];
+	}
+	
+	//not to be changed
+	double[] getPotentials() {
+		return potentials;
+	}
+	
+	double[] getWeights() {
+		return weights;
+	}
+
+	//same as Neuron.paint at this frame, for neurons.get(id)
+	void paint(Neuron n, int id, int[] weightStart, Graphics2D g) {
+		n.paint(g, potentials[id], weights, weightStart[id]);
+	}
+}
@@ -0,0 +1,76 @@
+package main;
+
+//DFT magnitudes of a chosen set of bins, one Goertzel filter per bin
+// s[n] = x[n] + 2cos(w)s[n-1] - s[n-2], w = 2*pi*bin/windowSize
+// |X[bin]|^2 = s1^2 + s2^2 - 2cos(w)s1*s2 after the last sample
+//
+//a frame costs bins*windowSize multiply-adds, against about (windowSize/4)log2(windowSize/2) butterflies
+// for the real input FFT of every bin, so it only wins when few bins are needed (see isCheaperThanFFT)
+//
+//frames of the spectrogram don't overlap (a frame step is longer than the window at the sizes Main uses),
+// so a sliding DFT, which updates bins one sample at a time, would have nothing to reuse
+//not thread safe, use one per thread
+public class GoertzelBank {
+
+	//measured: Goertzel was faster than the real FFT up to about this many bins per log2(windowSize)
+	private static final double BINS_PER_FFT_PASS = 1.5;
+
+	private final int windowSize;
+	private final int[] bins;
+	private final double[] coefficients;	//2cos(w)
+	private final double[] s1;
+	private final double[] s2;
+
+	public GoertzelBank(int windowSize, int[] bins) {
+		this.windowSize = windowSize;
+		this.bins = bins.clone();
+		this.coefficients = new double[bins.length];
+		for(int b = 0; b < bins.length; b++) {
+			if(bins[b] < 0 || bins[b] >= windowSize) {
+				throw new RuntimeException("bin out of bounds: " + bins[b] + " / " + windowSize);
+			}
+			coefficients[b] = 2.0 * Math.cos(2.0 * Math.PI * bins[b] / windowSize);
+		}
+		this.s1 = new double[bins.length];
+		this.s2 = new double[bins.length];
+	}
+
+	public static boolean isCheaperThanFFT(int windowSize, int numberOfBins) {
+		int log2 = 31 - Integer.numberOfLeadingZeros(windowSize);
+		return numberOfBins <= BINS_PER_FFT_PASS * log2;
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	public int getNumberOfBins() {
+		return bins.length;
+	}
+
+	///////////////////////////////////////////////////////
+
+	//magnitudes[b] = |X[bins[b]]| of samples[start, start + windowSize), not normalized (see HelperFunctions.makeBinSpectrogram)
+	public void magnitudes(short[] samples, int start, double[] magnitudes) {
+		int numberOfBins = bins.length;
+		for(int b = 0; b < numberOfBins; b++) {
+			s1[b] = 0.0;
+			s2[b] = 0.0;
+		}
+
+		//all filters advance together, one sample at a time
+		for(int n = start; n < start + windowSize; n++) {
+			double x = samples[n];
+			for(int b = 0; b < numberOfBins; b++) {
+				double s0 = x + coefficients[b] * s1[b] - s2[b];
+				s2[b] = s1[b];
+				s1[b] = s0;
+			}
+		}
+
+		for(int b = 0; b < numberOfBins; b++) {
+			double power = s1[b]*s1[b] + s2[b]*s2[b] - coefficients[b]*s1[b]*s2[b];
+			magnitudes[b] = Math.sqrt(Math.max(power, 0.0));
+		}
+	}
+}
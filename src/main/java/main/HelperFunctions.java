@@ -2,9 +2,12 @@ package main;
 
 import java.awt.Color;
 import java.io.IOException;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class HelperFunctions {
 
@@ -25,40 +28,39 @@ public class HelperFunctions {
 
 		return new Color(rd, gd, bd, ad);
 	}
+	
+	//the same as getGradiantColor(low, high, value).getRGB() (ARGB), without making a Color
+	public static int getGradiantRGB(Color low, Color high, double value) {
+		float rd = (float) ((low.getRed() + value*(high.getRed() - low.getRed())) / 255.0 );
+		float gd = (float) ((low.getGreen() + value*(high.getGreen() - low.getGreen())) / 255.0 );
+		float bd = (float) ((low.getBlue() + value*(high.getBlue() - low.getBlue())) / 255.0 );
+		float ad = (float) ((low.getAlpha() + value*(high.getAlpha() - low.getAlpha())) / 255.0 );
+		
+		//rounded like the Color(float, float, float, float) constructor
+		return (((int) (ad*255+0.5) & 0xFF) << 24)
+				| (((int) (rd*255+0.5) & 0xFF) << 16)
+				| (((int) (gd*255+0.5) & 0xFF) << 8)
+				| ((int) (bd*255+0.5) & 0xFF);
+	}
 
 
 	// http://introcs.cs.princeton.edu/java/97data/FFT.java.html
 	// compute the FFT of x[], assuming its length is a power of 2
+	//kept for Complex callers, the work is done by FFT
 	public static Complex[] fft(Complex[] x) {
 		int N = x.length;
-
-		// base case
-		if (N == 1) return new Complex[] { x[0] };
-
-		// radix 2 Cooley-Tukey FFT
-		if (N % 2 != 0) { throw new RuntimeException("N is not a power of 2"); }
-
-		// fft of even terms
-		Complex[] even = new Complex[N/2];
-		for (int k = 0; k < N/2; k++) {
-			even[k] = x[2*k];
+		FFT fft = FFTPlan.of(N).getFFT();
+		double[] re = fft.getReal();
+		double[] im = fft.getImaginary();
+		for (int k = 0; k < N; k++) {
+			re[k] = x[k].re();
+			im[k] = x[k].im();
 		}
-		Complex[] q = fft(even);
+		fft.transform();
 
-		// fft of odd terms
-		Complex[] odd  = even;  // reuse the array
-		for (int k = 0; k < N/2; k++) {
-			odd[k] = x[2*k + 1];
-		}
-		Complex[] r = fft(odd);
-
-		// combine
 		Complex[] y = new Complex[N];
-		for (int k = 0; k < N/2; k++) {
-			double kth = -2 * k * Math.PI / N;
-			Complex wk = new Complex(Math.cos(kth), Math.sin(kth));
-			y[k]       = q[k].plus(wk.times(r[k]));
-			y[k + N/2] = q[k].minus(wk.times(r[k]));
+		for (int k = 0; k < N; k++) {
+			y[k] = new Complex(re[k], im[k]);
 		}
 		return y;
 	}
@@ -91,7 +93,44 @@ public class HelperFunctions {
 	 * @return
 	 */
 	public static double[][] makeSpectrogram(short[] samples, double audioSampleRate, double framesPerSecond, int numberOfFrames, int windowSize) {
-		double[][] spectrogram = new double[numberOfFrames][windowSize];
+		return makeSpectrogram(samples, audioSampleRate, framesPerSecond, numberOfFrames, windowSize, windowSize);
+	}
+	
+	/**
+	 * same as above, but only keeping the first numberOfBins bins of each frame
+	 * (normalized the same way, by the max over all bins)
+	 * 
+	 * the input is real, so bin windowSize-k mirrors bin k, and only the half spectrum is computed
+	 * 
+	 * @param numberOfBins - bins to keep, windowSize/2 + 1 or less for just the half spectrum, up to windowSize
+	 * @return
+	 */
+	public static double[][] makeSpectrogram(short[] samples, double audioSampleRate, double framesPerSecond, int numberOfFrames, int windowSize, int numberOfBins) {
+		return makeSpectrogram(samples, audioSampleRate, framesPerSecond, numberOfFrames, windowSize, numberOfBins, null);
+	}
+	
+	/**
+	 * same as above, with the frames split over a fork-join pool (null for serial)
+	 * 
+	 * each frame only depends on its own samples, and every worker thread has its own FFT buffers (FFTPlan.getFFT)
+	 * the partitions each return their max, and the max of those normalizes everything afterwards
+	 * 
+	 * @return
+	 */
+	public static double[][] makeSpectrogram(short[] samples, double audioSampleRate, double framesPerSecond, int numberOfFrames, int windowSize, int numberOfBins, ForkJoinPool pool) {
+		return makeSpectrogram(ShortBuffer.wrap(samples), audioSampleRate, framesPerSecond, numberOfFrames, windowSize, numberOfBins, pool);
+	}
+	
+	/**
+	 * same as above, reading the samples from a buffer (from its position), e.g. a memory mapped WavFile
+	 * 
+	 * @return
+	 */
+	public static double[][] makeSpectrogram(ShortBuffer samples, double audioSampleRate, double framesPerSecond, int numberOfFrames, int windowSize, int numberOfBins, ForkJoinPool pool) {
+		if(numberOfBins < 0 || numberOfBins > windowSize) {
+			throw new RuntimeException("number of bins out of bounds: " + numberOfBins + " / " + windowSize);
+		}
+		double[][] spectrogram = new double[numberOfFrames][numberOfBins];
 		//frames_per_second -> (frames/sec)
 		//audio_sample_rate -> (samples/sec)
 		// (1/frames_per_sec)(audio_sample_rate) -> (sec/frame)(samples/sec) -> (samples/frame)
@@ -110,25 +149,11 @@ public class HelperFunctions {
 		//grab something thats a power of 2 and smaller than that
 		//int windowSize = NUMBER_NEURONS_PER_LAYER_ARRAY[0] * 2;		//multiply by 2 b/c of symmetry in spectrum
 		//int windowSize = 4096;
-		Complex[] audioSamples = new Complex[windowSize];
-		double spectrogramMax = 0.0;
-		for(int frameIndex = 0; frameIndex < numberOfFrames; frameIndex++) {
-			int frameSampleStart = frameIndex * samplesPerFrame;
-			for(int sampleIndex = 0; sampleIndex < windowSize; sampleIndex++) {
-				audioSamples[sampleIndex] = new Complex(
-						samples[frameSampleStart + sampleIndex], 
-						0.0);
-			}
-			Complex[] fft = HelperFunctions.fft(audioSamples);	//get the fft
-
-			for(int sampleIndex = 0; sampleIndex < windowSize; sampleIndex++) {
-				spectrogram[frameIndex][sampleIndex] = fft[sampleIndex].abs();
-				spectrogramMax = Math.max(spectrogramMax, spectrogram[frameIndex][sampleIndex]);
-			}
-		}
+		SpectrogramFrames frames = new SpectrogramFrames(samples, samplesPerFrame, windowSize, spectrogram, 0, numberOfFrames, pool != null);
+		double spectrogramMax = pool == null ? frames.compute() : pool.invoke(frames);
 
 		for(int frameIndex = 0; frameIndex < numberOfFrames; frameIndex++) {
-			for(int sampleIndex = 0; sampleIndex < windowSize; sampleIndex++) {
+			for(int sampleIndex = 0; sampleIndex < numberOfBins; sampleIndex++) {
 				spectrogram[frameIndex][sampleIndex] /= spectrogramMax;
 				//System.out.format("%2.1f ", spectrogram[frameIndex][sampleIndex]);
 			}
@@ -137,7 +162,139 @@ public class HelperFunctions {
 
 		return spectrogram;
 	}
+	
+	//fills spectrogram[from, to) with unnormalized magnitudes, and returns their max (over the whole spectrum)
+	private static class SpectrogramFrames extends RecursiveTask<Double> {
+		private static final long serialVersionUID = 1L;
+		
+		//don't split fewer frames than this
+		private static final int MIN_PARTITION_SIZE = 4;
+		
+		private final ShortBuffer samples;	//shared, each partition reads through its own duplicate
+		private final int samplesPerFrame;
+		private final int windowSize;
+		private final double[][] spectrogram;
+		private final int from;
+		private final int to;
+		private final boolean parallel;		//split and fork, only when invoked in the caller's pool
+		
+		SpectrogramFrames(ShortBuffer samples, int samplesPerFrame, int windowSize, double[][] spectrogram, int from, int to, boolean parallel) {
+			this.samples = samples;
+			this.samplesPerFrame = samplesPerFrame;
+			this.windowSize = windowSize;
+			this.spectrogram = spectrogram;
+			this.from = from;
+			this.to = to;
+			this.parallel = parallel;
+		}
+		
+		@Override
+		protected Double compute() {
+			if(parallel && to - from > MIN_PARTITION_SIZE) {
+				int middle = (from + to) >>> 1;
+				SpectrogramFrames low = new SpectrogramFrames(samples, samplesPerFrame, windowSize, spectrogram, from, middle, true);
+				SpectrogramFrames high = new SpectrogramFrames(samples, samplesPerFrame, windowSize, spectrogram, middle, to, true);
+				low.fork();
+				double highMax = high.compute();
+				return Math.max(low.join(), highMax);
+			}
+			return computeFrames();
+		}
+		
+		private double computeFrames() {
+			FFT fft = FFTPlan.of(windowSize).getFFT();
+			double[] re = fft.getReal();
+			int halfSpectrumSize = windowSize/2 + 1;
+			double spectrogramMax = 0.0;
+			
+			//bulk gets are much faster than one at a time on a mapped (byte swapped) buffer
+			ShortBuffer reader = samples.duplicate();
+			short[] window = new short[windowSize];
+			
+			for(int frameIndex = from; frameIndex < to; frameIndex++) {
+				int numberOfBins = spectrogram[frameIndex].length;
+				reader.position(samples.position() + frameIndex * samplesPerFrame);
+				reader.get(window);
+				for(int sampleIndex = 0; sampleIndex < windowSize; sampleIndex++) {
+					re[sampleIndex] = window[sampleIndex];
+				}
+				fft.realTransform();	//get the fft
+				
+				//the max over the half spectrum is the max over all of it
+				for(int sampleIndex = 0; sampleIndex < halfSpectrumSize; sampleIndex++) {
+					double abs = fft.abs(sampleIndex);
+					spectrogramMax = Math.max(spectrogramMax, abs);
+					if(sampleIndex < numberOfBins) {
+						spectrogram[frameIndex][sampleIndex] = abs;
+					}
+				}
+				for(int sampleIndex = halfSpectrumSize; sampleIndex < numberOfBins; sampleIndex++) {
+					spectrogram[frameIndex][sampleIndex] = spectrogram[frameIndex][windowSize - sampleIndex];
+				}
+			}
+			return spectrogramMax;
+		}
+	}
 
+	/**
+	 * spectrogram of just the given bins, normalized by the max over those bins only
+	 * 
+	 * unlike makeSpectrogram, which normalizes by the max over the whole spectrum: that max needs every bin,
+	 * which is the work the Goertzel filters are there to skip. so the same bin comes out larger here
+	 * (by the whole spectrum max / the max over bins), and the loudest of the given bins is always 1
+	 * 
+	 * for a few bins each one is filtered directly (GoertzelBank), otherwise they are read from a real input FFT
+	 * 
+	 * @param bins - fft bins to keep, in [0, windowSize)
+	 * @return [numberOfFrames][bins.length]
+	 */
+	public static double[][] makeBinSpectrogram(short[] samples, double audioSampleRate, double framesPerSecond, int numberOfFrames, int windowSize, int[] bins) {
+		double[][] spectrogram = new double[numberOfFrames][bins.length];
+		int samplesPerFrame = (int) (audioSampleRate / framesPerSecond);
+		
+		if(GoertzelBank.isCheaperThanFFT(windowSize, bins.length)) {
+			GoertzelBank bank = new GoertzelBank(windowSize, bins);
+			for(int frameIndex = 0; frameIndex < numberOfFrames; frameIndex++) {
+				bank.magnitudes(samples, frameIndex * samplesPerFrame, spectrogram[frameIndex]);
+			}
+		}
+		else {
+			FFT fft = FFTPlan.of(windowSize).getFFT();
+			double[] re = fft.getReal();
+			for(int bin : bins) {
+				if(bin < 0 || bin >= windowSize) {
+					throw new RuntimeException("bin out of bounds: " + bin + " / " + windowSize);
+				}
+			}
+			for(int frameIndex = 0; frameIndex < numberOfFrames; frameIndex++) {
+				int frameSampleStart = frameIndex * samplesPerFrame;
+				for(int sampleIndex = 0; sampleIndex < windowSize; sampleIndex++) {
+					re[sampleIndex] = samples[frameSampleStart + sampleIndex];
+				}
+				fft.realTransform();
+				
+				for(int b = 0; b < bins.length; b++) {
+					int bin = bins[b] <= windowSize/2 ? bins[b] : windowSize - bins[b];	//upper half mirrors the lower
+					spectrogram[frameIndex][b] = fft.abs(bin);
+				}
+			}
+		}
+		
+		double spectrogramMax = 0.0;
+		for(int frameIndex = 0; frameIndex < numberOfFrames; frameIndex++) {
+			for(int b = 0; b < bins.length; b++) {
+				spectrogramMax = Math.max(spectrogramMax, spectrogram[frameIndex][b]);
+			}
+		}
+		for(int frameIndex = 0; frameIndex < numberOfFrames; frameIndex++) {
+			for(int b = 0; b < bins.length; b++) {
+				spectrogram[frameIndex][b] /= spectrogramMax;
+			}
+		}
+		
+		return spectrogram;
+	}
+	
 	// https://en.wikipedia.org/wiki/Window_function#Tukey_window
 	public static double tukeyWindow(int n, int N, double a) throws IOException {
 		if(n < 0 || n >= N) {
@@ -3,6 +3,7 @@ package main;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -11,12 +12,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 import com.xuggle.mediatool.IMediaWriter;
 import com.xuggle.mediatool.ToolFactory;
 import com.xuggle.xuggler.ICodec;
 
+import neuron.CompiledNetwork;
 import neuron.Neuron;
 
 public class Main {
@@ -26,6 +29,14 @@ public class Main {
 	private static final int IMAGE_HEIGHT = 1080;
 	private static BufferedImage image = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
 	
+	//frames waiting to be painted while the test example runs (0 paints on the simulation thread)
+	private static final int RENDER_QUEUE_CAPACITY = 8;
+	private static final RenderPipeline.Backpressure RENDER_BACKPRESSURE = RenderPipeline.Backpressure.BLOCK;
+	//paint what Neuron.paint does by writing the pixels directly, in bands on all cores (see RasterPainter)
+	//off: same frames (RasterPainterTest), but on one core it's slower than Neuron.paint, and it draws every shape once to start
+	private static final boolean RASTER_PAINTING = false;
+	private static final ForkJoinPool renderPool = new ForkJoinPool();
+	
 	private static Random random = new Random(0);
 
 	private static final int[] NUMBER_NEURONS_PER_LAYER_ARRAY = {64, 64, 8};
@@ -42,12 +53,26 @@ public class Main {
 	private static final int WINDOW_SIZE = 4096;
 	private static final double TUKEY_ALPHA = 0.2;
 	
+	//spectrogram frames are computed on all cores
+	private static final ForkJoinPool spectrogramPool = new ForkJoinPool();
+	
+	//spectrograms are kept between runs, in memory and on disk (off by default, it writes to SPECTROGRAM_CACHE_DIRECTORY)
+	private static final boolean SPECTROGRAM_CACHING = false;
+	private static final String SPECTROGRAM_CACHE_DIRECTORY = "spectrogram_cache";
+	private static final long SPECTROGRAM_CACHE_BYTES = 256L * 1024 * 1024;
+	private static final int SPECTROGRAM_CACHE_ENTRIES = 16;
+	private static SpectrogramCache spectrogramCache;		//null without SPECTROGRAM_CACHING
+	
 	//private static final int audioStreamIndex = 1;	//TODO: change case
 	//private static final int audioStreamId = 0;
 	//private static final int channels = 1;
 
 	private static final int TRAINING_COUNT = 100;
 	
+	//more than 1 also trains with a ParallelTrainer, and compares it to the serial training
+	private static final int PARALLEL_TRAINING_WORKERS = 1;
+	private static final int PARALLEL_TRAINING_MERGE_INTERVAL = 8;	//examples per worker between merges
+	
 	
 	// https://en.wikipedia.org/wiki/Piano_key_frequencies
 	//                      	   C       D       E       F       G       A    B       C
@@ -69,6 +94,10 @@ public class Main {
 			return;
 		}
 		
+		if(SPECTROGRAM_CACHING) {
+			spectrogramCache = new SpectrogramCache(new File(SPECTROGRAM_CACHE_DIRECTORY), SPECTROGRAM_CACHE_BYTES, SPECTROGRAM_CACHE_ENTRIES);
+		}
+		
 		System.out.println("init network");
 		initilizeNetwork();
 
@@ -76,64 +105,84 @@ public class Main {
 		List<TrainingExample> exampleList = generateTrainingExamples();
 		
 		System.out.println("train network");
-		trainNetwork(exampleList);
-		
-		System.out.println("get test audio smples");
-		short[] samples = getTestAudioSamples();
-		
-		System.out.println("build test example");
-		TrainingExample te = new TrainingExample(
-				AUDIO_SAMPLE_RATE, FRAMES_PER_SECOND, NUMBER_OF_FRAMES, WINDOW_SIZE,
-				TIME_UNITS_PER_FRAME,
-				FRAME_TIME_UNIT,
-				NUMBER_NEURONS_PER_LAYER_ARRAY[0],
-				samples, 
-				neurons,		//all neurons
-				null,
-				null);
+		if(PARALLEL_TRAINING_WORKERS > 1) {
+			compareParallelTraining(exampleList);
+		}
+		else {
+			trainNetwork(exampleList);
+		}
+		
+		TrainingExample te;
+		if(args.length > 0) {
+			//classify a recording (16 bit mono WAV) instead of the test tones, read straight from the mapped file
+			System.out.println("map test recording " + args[0]);
+			WavFile wav = WavFile.open(new File(args[0]));
+			
+			System.out.println("build test example");
+			te = new TrainingExample(
+					wav.getSampleRate(), FRAMES_PER_SECOND, 
+					wav.getNumberOfFrames(FRAMES_PER_SECOND, WINDOW_SIZE), 
+					WINDOW_SIZE,
+					TIME_UNITS_PER_FRAME,
+					FRAME_TIME_UNIT,
+					NUMBER_NEURONS_PER_LAYER_ARRAY[0],
+					wav.getSamples(), 
+					neurons,		//all neurons
+					null,
+					null,
+					spectrogramPool,
+					spectrogramCache);
+		}
+		else {
+			System.out.println("get test audio smples");
+			short[] samples = getTestAudioSamples();
+			
+			System.out.println("build test example");
+			te = new TrainingExample(
+					AUDIO_SAMPLE_RATE, FRAMES_PER_SECOND, NUMBER_OF_FRAMES, WINDOW_SIZE,
+					TIME_UNITS_PER_FRAME,
+					FRAME_TIME_UNIT,
+					NUMBER_NEURONS_PER_LAYER_ARRAY[0],
+					samples, 
+					neurons,		//all neurons
+					null,
+					null,
+					spectrogramPool,
+					spectrogramCache);
+		}
 		
 		System.out.println("run test example");
 		int clock = 0;
-		te.runNetwork( 
-				true,
-				clock,
-				-1,		//no learning back prop
-				writer, 
-				image);
-
-		writer.close();
+		te.setPipelinedRendering(RENDER_QUEUE_CAPACITY, RENDER_BACKPRESSURE);
+		te.setRasterPainting(RASTER_PAINTING, renderPool);
+		try {
+			te.runNetwork( 
+					true,
+					clock,
+					-1,		//no learning back prop
+					writer, 
+					image);
+			if(te.getRenderPipeline() != null && te.getRenderPipeline().getDroppedFrames() > 0) {
+				System.out.println("\t" + te.getRenderPipeline().getDroppedFrames() + " frames dropped from the video");
+			}
+		} finally {
+			writer.close();
+		}
 	}
 
 
 	private static short[] getTestAudioSamples() throws IOException {
-		List<Short> samples = new ArrayList<Short>();
-		
 		//frequency = (periods/second)
 		//sample rate = (samples/second)
 		//frquency / sample rate = (periods/sample)
 		int numberSamplesForEachFrequency = (int)((NUMBER_OF_SECONDS * AUDIO_SAMPLE_RATE) / frequencies.length);
 		//int coolDownPeriod = numberSamplesForEachFrequency / 10;
 		//numberSamplesForEachFrequency -= coolDownPeriod;
-		for(double frequency : frequencies) {
-			List<Short> l1 = HelperFunctions.getAudioSamples(numberSamplesForEachFrequency, frequency, AUDIO_SAMPLE_RATE, TUKEY_ALPHA);
-			samples.addAll(l1);
-			
-			////zero out the end
-			//for(int idx = 0; idx < coolDownPeriod; idx++) {
-			//	samples.add((short)0);
-			//}
-		}
-		
-		
+		short[] samples = ToneSynthesizer.tones(frequencies, numberSamplesForEachFrequency, AUDIO_SAMPLE_RATE, TUKEY_ALPHA);
 		
 		//TODO: add lowpass filter to drop the sharp noise spikes between notes
-
-		short[] ret = new short[samples.size()];
-		for(int idx = 0; idx < samples.size(); idx++) {
-			ret[idx] = samples.get(idx);
-		}
 		
-		return ret;
+		return samples;
 	}
 	
 	
@@ -235,11 +284,7 @@ public class Main {
 		for(int fIdx = 0; fIdx < frequencies.length; fIdx++) {
 			//get training element for a tone
 			double frequency = frequencies[fIdx];
-			List<Short> samplesList = HelperFunctions.getAudioSamples(numberTrainingSamples, frequency, AUDIO_SAMPLE_RATE, TUKEY_ALPHA);
-			short[] samples = new short[samplesList.size()];
-			for(int idx = 0; idx < samplesList.size(); idx++) {
-				samples[idx] = samplesList.get(idx);
-			}
+			short[] samples = ToneSynthesizer.tone(numberTrainingSamples, frequency, AUDIO_SAMPLE_RATE, TUKEY_ALPHA);
 			
 			List<Neuron> positiveNeurons = new ArrayList<Neuron>();
 			List<Neuron> negativeNeurons = new ArrayList<Neuron>();
@@ -270,7 +315,9 @@ public class Main {
 					samples, 
 					neurons,		//all neurons
 					positiveNeurons,
-					negativeNeurons);
+					negativeNeurons,
+					spectrogramPool,
+					spectrogramCache);
 			
 			examples.add(te);
 		}
@@ -280,6 +327,23 @@ public class Main {
 
 	
 	private static void trainNetwork(List<TrainingExample> exampleList) throws IOException {
+		trainNetworkSerially(makeTrainingSchedule(exampleList));
+	}
+	
+	private static void trainNetworkSerially(List<TrainingExample> schedule) throws IOException {
+		for(TrainingExample example : schedule) {
+			example.runNetwork( 
+					false,		//doWrite
+					-1,			//clock,
+					3,			//learnDepth
+					null, 
+					null);
+		}
+	}
+	
+	//every example TRAINING_COUNT times, in random order
+	private static List<TrainingExample> makeTrainingSchedule(List<TrainingExample> exampleList) {
+		List<TrainingExample> schedule = new ArrayList<TrainingExample>();
 		Map<TrainingExample, Integer> trainingCounts = new HashMap<TrainingExample, Integer>();
 		for(TrainingExample te : exampleList) {
 			trainingCounts.put(te, 0);
@@ -293,17 +357,80 @@ public class Main {
 			TrainingExample example = exampleList.get(r);
 			int numberOfTimesTrained = trainingCounts.get(example);
 			if(numberOfTimesTrained < TRAINING_COUNT) {
-				example.runNetwork( 
-						false,		//doWrite
-						-1,			//clock,
-						3,			//learnDepth
-						null, 
-						null);
-				
+				schedule.add(example);
 				trainingCounts.put(example, numberOfTimesTrained+1);
 				trainingIndex++;
 			}
 		}
+		return schedule;
+	}
+	
+	//train the same schedule from the same starting weights serially, and with 1 and PARALLEL_TRAINING_WORKERS workers
+	// prints the times and how each classifies the training examples
+	// the network is left with the weights of the parallel training
+	private static void compareParallelTraining(List<TrainingExample> exampleList) throws IOException {
+		List<TrainingExample> schedule = makeTrainingSchedule(exampleList);
+		CompiledNetwork initialWeights = new CompiledNetwork(neurons);
+		
+		long start = System.nanoTime();
+		trainNetworkSerially(schedule);
+		long serialTime = System.nanoTime() - start;
+		int[] serialAnswers = classify(exampleList);
+		
+		initialWeights.copyWeightsToNeurons();
+		ParallelTrainer oneWorker = new ParallelTrainer(neurons, 1, PARALLEL_TRAINING_MERGE_INTERVAL);
+		start = System.nanoTime();
+		oneWorker.train(schedule, 3);
+		long oneWorkerTime = System.nanoTime() - start;
+		oneWorker.shutdown();
+		
+		initialWeights.copyWeightsToNeurons();
+		ParallelTrainer trainer = new ParallelTrainer(neurons, PARALLEL_TRAINING_WORKERS, PARALLEL_TRAINING_MERGE_INTERVAL);
+		start = System.nanoTime();
+		trainer.train(schedule, 3);
+		long parallelTime = System.nanoTime() - start;
+		trainer.shutdown();
+		int[] parallelAnswers = classify(exampleList);
+		
+		int serialCorrect = 0;
+		int parallelCorrect = 0;
+		int agreeing = 0;
+		for(int idx = 0; idx < exampleList.size(); idx++) {
+			Neuron expected = exampleList.get(idx).getPositiveActiveNeurons().get(0);
+			serialCorrect += serialAnswers[idx] == neurons.indexOf(expected) ? 1 : 0;
+			parallelCorrect += parallelAnswers[idx] == neurons.indexOf(expected) ? 1 : 0;
+			agreeing += serialAnswers[idx] == parallelAnswers[idx] ? 1 : 0;
+		}
+		
+		System.out.println("\tserial: " + serialTime/1e6 + " ms, " + serialCorrect + "/" + exampleList.size() + " correct");
+		System.out.println("\t1 worker: " + oneWorkerTime/1e6 + " ms (x" + (double)serialTime/oneWorkerTime + ")");
+		System.out.println("\t" + PARALLEL_TRAINING_WORKERS + " workers, merge every " + PARALLEL_TRAINING_MERGE_INTERVAL + ": " 
+				+ parallelTime/1e6 + " ms (x" + (double)serialTime/parallelTime + "), " 
+				+ parallelCorrect + "/" + exampleList.size() + " correct, " 
+				+ agreeing + "/" + exampleList.size() + " same as serial");
+	}
+	
+	//for each example, the id of the last layer neuron that spiked most without any forcing (-1 if none spiked)
+	private static int[] classify(List<TrainingExample> exampleList) throws IOException {
+		CompiledNetwork network = new CompiledNetwork(neurons);
+		int lastLayerSize = NUMBER_NEURONS_PER_LAYER_ARRAY[NUMBER_NEURONS_PER_LAYER_ARRAY.length-1];
+		int neuronOffset = neurons.size() - lastLayerSize;
+		
+		int[] answers = new int[exampleList.size()];
+		for(int idx = 0; idx < exampleList.size(); idx++) {
+			int[] spikeCounts = new int[network.size()];
+			exampleList.get(idx).countSpikes(network, spikeCounts);
+			
+			answers[idx] = -1;
+			int mostSpikes = 0;
+			for(int id = neuronOffset; id < neurons.size(); id++) {
+				if(spikeCounts[id] > mostSpikes) {
+					mostSpikes = spikeCounts[id];
+					answers[idx] = id;
+				}
+			}
+		}
+		return answers;
 	}
 	
 
@@ -660,14 +787,14 @@ public class Main {
 			System.out.print(frameIndex);
 			for(Neuron n : neurons) {
 				System.out.print("\t" + n.getPotential(frameIndex));
-				System.out.print("\t" + n.inputs.get(n00) + "\t" + n.inputs.get(n01));
+				System.out.print("\t" + n.getInputWeight(n00) + "\t" + n.getInputWeight(n01));
 			}
 			System.out.println();
 			
-			//System.out.println("\t10: " + n10.inputs.get(n00) + "\t" + n10.inputs.get(n01));
-			//System.out.println("\t11: " + n11.inputs.get(n00) + "\t" + n11.inputs.get(n01));
-			//System.out.println("\t12: " + n12.inputs.get(n00) + "\t" + n12.inputs.get(n01));
-			//System.out.println("\t13: " + n13.inputs.get(n00) + "\t" + n13.inputs.get(n01));
+			//System.out.println("\t10: " + n10.getInputWeight(n00) + "\t" + n10.getInputWeight(n01));
+			//System.out.println("\t11: " + n11.getInputWeight(n00) + "\t" + n11.getInputWeight(n01));
+			//System.out.println("\t12: " + n12.getInputWeight(n00) + "\t" + n12.getInputWeight(n01));
+			//System.out.println("\t13: " + n13.getInputWeight(n00) + "\t" + n13.getInputWeight(n01));
 			
 			
 			//add any sensory events that may have happened in this frame
@@ -0,0 +1,131 @@
+package main;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import neuron.CompiledNetwork;
+import neuron.Neuron;
+
+//data parallel training over a schedule of training examples
+//
+//every worker trains its own copy of the weights (a CompiledNetwork of the same neurons),
+// taking the next mergeInterval examples of the schedule each round
+//after each round the copies are averaged and every worker continues from the average
+//	mergeInterval 1 merges after every example, the number of distinct examples merges about once an epoch
+//
+//with one worker this is exactly the serial training
+//with more, a copy doesn't see the others' learning until the merge, so the result drifts from the serial one
+public class ParallelTrainer {
+
+	private final List<Neuron> neurons;
+	private final int numberOfWorkers;
+	private final int mergeInterval;
+	private final ExecutorService executor;
+
+	public ParallelTrainer(List<Neuron> neurons, int numberOfWorkers, int mergeInterval) throws IOException {
+		if(numberOfWorkers < 1 || mergeInterval < 1) {
+			throw new IOException("need at least one worker and one example per merge");
+		}
+		this.neurons = neurons;
+		this.numberOfWorkers = numberOfWorkers;
+		this.mergeInterval = mergeInterval;
+		this.executor = Executors.newFixedThreadPool(numberOfWorkers);
+	}
+
+	public int getNumberOfWorkers() {
+		return numberOfWorkers;
+	}
+
+	public int getMergeInterval() {
+		return mergeInterval;
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	///////////////////////////////////////////////////////
+
+	//train the neurons' current weights on the schedule (in order, spread over the workers), and store the result back in the neurons
+	public void train(List<TrainingExample> schedule, final int maxLearningDepth) throws IOException {
+		CompiledNetwork[] replicas = new CompiledNetwork[numberOfWorkers];
+		for(int w = 0; w < numberOfWorkers; w++) {
+			replicas[w] = new CompiledNetwork(neurons);
+		}
+
+		int numberOfSynapses = replicas[0].getNumberOfSynapses();
+		double[] replicaWeights = new double[numberOfSynapses];
+		double[] mergedWeights = new double[numberOfSynapses];
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+		int position = 0;
+		while(position < schedule.size()) {
+			futures.clear();
+			for(int w = 0; w < numberOfWorkers; w++) {
+				int from = position + w*mergeInterval;
+				int to = Math.min(from + mergeInterval, schedule.size());
+				if(from < to) {
+					futures.add(executor.submit(new TrainTask(replicas[w], schedule.subList(from, to), maxLearningDepth)));
+				}
+			}
+			int numberOfTrained = futures.size();
+
+			for(Future<Void> f : futures) {
+				try {
+					f.get();
+				} catch (InterruptedException e) {
+					throw new IOException("training interrupted", e);
+				} catch (ExecutionException e) {
+					throw new IOException("training failed", e.getCause());
+				}
+			}
+
+			//average the copies that trained this round, and hand that to all of them
+			if(numberOfTrained > 1) {
+				replicas[0].getWeights(mergedWeights);
+				for(int w = 1; w < numberOfTrained; w++) {
+					replicas[w].getWeights(replicaWeights);
+					for(int s = 0; s < numberOfSynapses; s++) {
+						mergedWeights[s] += replicaWeights[s];
+					}
+				}
+				for(int s = 0; s < numberOfSynapses; s++) {
+					mergedWeights[s] /= numberOfTrained;
+				}
+				for(CompiledNetwork replica : replicas) {
+					replica.setWeights(mergedWeights);
+				}
+			}
+
+			position += numberOfWorkers*mergeInterval;
+		}
+
+		replicas[0].copyWeightsToNeurons();
+	}
+
+	private static class TrainTask implements Callable<Void> {
+		private final CompiledNetwork network;
+		private final List<TrainingExample> examples;
+		private final int maxLearningDepth;
+
+		TrainTask(CompiledNetwork network, List<TrainingExample> examples, int maxLearningDepth) {
+			this.network = network;
+			this.examples = examples;
+			this.maxLearningDepth = maxLearningDepth;
+		}
+
+		@Override
+		public Void call() throws IOException {
+			for(TrainingExample example : examples) {
+				example.runNetwork(network, maxLearningDepth);
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,473 @@
+package main;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import neuron.Neuron;
+
+//paints the same pixels as Neuron.paint on every neuron, but writes them straight into the image's bytes (TYPE_3BYTE_BGR only)
+//
+//like Neuron.paint the canvas isn't cleared, and each neuron in list order paints its body, its name, then its dendrites over what's there
+//the canvas is cut into bands of TILE_HEIGHT rows, painted in parallel on the pool (serially without one)
+//each band goes through the neurons in that same order, so every pixel gets the same writes in the same order as with Neuron.paint
+//
+//to get the same pixels as Graphics2D:
+//	bodies, names and translucent dendrites are drawn once by Graphics2D, where they'll be on the canvas, and kept as runs of pixels
+//	 (a translucent line is stroked as a shape, which picks slightly different pixels than the opaque line loop,
+//	 and the shapes are only redrawn when the canvas size changes)
+//	opaque dendrites are lines stepped like Graphics2D.drawLine steps them
+//	translucent colors are blended with the same 8 bit multiply table as Graphics2D
+//	colors are worked out like HelperFunctions.getGradiantColor, without making a Color each
+//RasterPainterTest compares it with Neuron.paint
+public class RasterPainter implements FramePainter {
+
+	private static final int TILE_HEIGHT = 32;
+
+	//how far past its bounds a shape is looked for when it's drawn once (glyphs reach past their advance, strokes past their line)
+	private static final int SHAPE_PADDING = 8;
+	private static final Color SHAPE_COLOR = Color.WHITE;
+	private static final Color TRANSLUCENT_SHAPE_COLOR = new Color(255, 255, 255, 128);
+
+	//MUL8[a*256 + b] ~= a*b/255, as Graphics2D rounds it
+	private static final int[] MUL8 = makeMul8();
+
+	private final List<Neuron> neurons;
+	private final ForkJoinPool pool;
+	private final int[] weightStart;		//neuron id's weights (and dendrites) from here, in input order
+
+	//geometry, by neuron id
+	private final int[] bodyX;
+	private final int[] bodyY;
+	private final char[][] names;
+
+	//geometry, by dendrite (this neuron's location to the input's)
+	private final int[] edgeX1;
+	private final int[] edgeY1;
+	private final int[] edgeX2;
+	private final int[] edgeY2;
+
+	//shapes as drawn on a canvas of shapeWidth x shapeHeight, as runs of pixels in the canvas' bytes: first byte, end byte
+	//(in order, so by row too)
+	private int shapeWidth = -1;
+	private int shapeHeight = -1;
+	private int[][] bodyRuns;			//by neuron id
+	private int[][] nameRuns;			//by neuron id
+	private int[][] translucentEdgeRuns;	//by dendrite
+
+	//colors of the frame being painted, ARGB
+	private final int[] bodyColors;		//by neuron id
+	private final int[] edgeColors;		//by dendrite
+
+	//of the neurons, when painting them directly
+	private final double[] potentials;
+	private final double[] weights;
+
+	//the frame being painted
+	private byte[] canvasData;
+	private int canvasWidth;
+	private int canvasHeight;
+
+	public RasterPainter(List<Neuron> neurons, ForkJoinPool pool) {
+		this.neurons = neurons;
+		this.pool = pool;
+		int numberOfNeurons = neurons.size();
+
+		weightStart = new int[numberOfNeurons + 1];
+		for(int id = 0; id < numberOfNeurons; id++) {
+			weightStart[id+1] = weightStart[id] + neurons.get(id).getNumberOfInputs();
+		}
+		int numberOfEdges = weightStart[numberOfNeurons];
+
+		bodyX = new int[numberOfNeurons];
+		bodyY = new int[numberOfNeurons];
+		names = new char[numberOfNeurons][];
+		edgeX1 = new int[numberOfEdges];
+		edgeY1 = new int[numberOfEdges];
+		edgeX2 = new int[numberOfEdges];
+		edgeY2 = new int[numberOfEdges];
+		for(int id = 0; id < numberOfNeurons; id++) {
+			Neuron n = neurons.get(id);
+			Pair<Double, Double> location = n.getLocation();
+			bodyX[id] = (int)(location.getLeft() - Neuron.HALF_SIZE);
+			bodyY[id] = (int)(location.getRight() - Neuron.HALF_SIZE);
+			names[id] = String.valueOf(n.getName()).toCharArray();
+
+			for(int idx = 0; idx < n.getNumberOfInputs(); idx++) {
+				Pair<Double, Double> nbrLocation = n.getInputNeuron(idx).getLocation();
+				int edge = weightStart[id] + idx;
+				edgeX1[edge] = location.getLeft().intValue();
+				edgeY1[edge] = location.getRight().intValue();
+				edgeX2[edge] = nbrLocation.getLeft().intValue();
+				edgeY2[edge] = nbrLocation.getRight().intValue();
+			}
+		}
+
+		bodyColors = new int[numberOfNeurons];
+		edgeColors = new int[numberOfEdges];
+		potentials = new double[numberOfNeurons];
+		weights = new double[numberOfEdges];
+	}
+
+	//draws every shape by itself on a canvas like the one to paint, and takes its pixels back off as runs
+	private void makeShapeRuns(int width, int height) {
+		BufferedImage shape = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		byte[] data = ((DataBufferByte) shape.getRaster().getDataBuffer()).getData();
+		Graphics2D g = (Graphics2D) shape.getGraphics();
+		FontMetrics metrics = g.getFontMetrics();
+		Runs runs = new Runs(data, width, height);
+
+		bodyRuns = new int[neurons.size()][];
+		nameRuns = new int[neurons.size()][];
+		translucentEdgeRuns = new int[edgeX1.length][];
+		for(int id = 0; id < neurons.size(); id++) {
+			g.setColor(SHAPE_COLOR);
+			g.fillOval(bodyX[id], bodyY[id], Neuron.SIZE, Neuron.SIZE);
+			for(int y = bodyY[id] - SHAPE_PADDING; y < bodyY[id] + Neuron.SIZE + SHAPE_PADDING; y++) {
+				runs.take(y, bodyX[id] - SHAPE_PADDING, bodyX[id] + Neuron.SIZE + SHAPE_PADDING);
+			}
+			bodyRuns[id] = runs.toArray();
+
+			g.drawChars(names[id], 0, names[id].length, bodyX[id], bodyY[id]);
+			int nameWidth = metrics.charsWidth(names[id], 0, names[id].length);
+			for(int y = bodyY[id] - metrics.getMaxAscent() - SHAPE_PADDING; y < bodyY[id] + metrics.getMaxDescent() + SHAPE_PADDING; y++) {
+				runs.take(y, bodyX[id] - SHAPE_PADDING, bodyX[id] + nameWidth + SHAPE_PADDING);
+			}
+			nameRuns[id] = runs.toArray();
+		}
+
+		g.setColor(TRANSLUCENT_SHAPE_COLOR);
+		for(int edge = 0; edge < edgeX1.length; edge++) {
+			int x1 = edgeX1[edge];
+			int y1 = edgeY1[edge];
+			int x2 = edgeX2[edge];
+			int y2 = edgeY2[edge];
+			g.drawLine(x1, y1, x2, y2);
+			for(int y = Math.min(y1, y2) - SHAPE_PADDING; y <= Math.max(y1, y2) + SHAPE_PADDING; y++) {
+				//the columns of the line within SHAPE_PADDING rows of this one
+				int left = Math.min(x1, x2);
+				int right = Math.max(x1, x2);
+				if(y1 != y2) {
+					double xA = x1 + (y - SHAPE_PADDING - y1) * (double)(x2 - x1) / (y2 - y1);
+					double xB = x1 + (y + SHAPE_PADDING - y1) * (double)(x2 - x1) / (y2 - y1);
+					left = Math.max(left, (int) Math.floor(Math.min(xA, xB)));
+					right = Math.min(right, (int) Math.ceil(Math.max(xA, xB)));
+				}
+				runs.take(y, left - SHAPE_PADDING, right + SHAPE_PADDING + 1);
+			}
+			translucentEdgeRuns[edge] = runs.toArray();
+		}
+		g.dispose();
+
+		shapeWidth = width;
+		shapeHeight = height;
+	}
+
+	//runs of drawn pixels, collected row by row, the pixels are cleared again as they're taken
+	private static class Runs {
+		private final byte[] data;
+		private final int width;
+		private final int height;
+		private int[] runs = new int[48];
+		private int count = 0;
+
+		Runs(byte[] data, int width, int height) {
+			this.data = data;
+			this.width = width;
+			this.height = height;
+		}
+
+		//columns [from, to) of row y
+		void take(int y, int from, int to) {
+			if(y < 0 || y >= height) {
+				return;
+			}
+			int x = Math.max(0, from);
+			to = Math.min(width, to);
+			while(x < to) {
+				if(data[3*(y*width + x)] == 0) {
+					x++;
+					continue;
+				}
+				int start = x;
+				while(x < to && data[3*(y*width + x)] != 0) {
+					data[3*(y*width + x)] = 0;
+					data[3*(y*width + x) + 1] = 0;
+					data[3*(y*width + x) + 2] = 0;
+					x++;
+				}
+				if(2*count + 2 > runs.length) {
+					runs = Arrays.copyOf(runs, 2*runs.length);
+				}
+				runs[2*count] = 3*(y*width + start);
+				runs[2*count + 1] = 3*(y*width + x);
+				count++;
+			}
+		}
+
+		//the runs taken since the last call
+		int[] toArray() {
+			int[] taken = Arrays.copyOf(runs, 2*count);
+			count = 0;
+			return taken;
+		}
+	}
+
+	private static int[] makeMul8() {
+		int[] mul8 = new int[256*256];
+		for(int a = 1; a < 256; a++) {
+			int increment = (a << 16) + (a << 8) + a;	//a * 0x010101
+			int value = increment + (1 << 23);
+			for(int b = 1; b < 256; b++) {
+				mul8[a*256 + b] = value >>> 24;
+				value += increment;
+			}
+		}
+		return mul8;
+	}
+
+	///////////////////////////////////////////////////////
+
+	//nothing is kept between frames
+	@Override
+	public void reset() {
+	}
+
+	//the neurons as they are at now
+	@Override
+	public void paint(long now, BufferedImage canvas) {
+		for(int id = 0; id < neurons.size(); id++) {
+			Neuron n = neurons.get(id);
+			potentials[id] = n.getPotential(now);
+			n.getInputWeights(weights, weightStart[id]);
+		}
+		paintFrame(potentials, weights, canvas);
+	}
+
+	@Override
+	public void paint(FrameSnapshot snapshot, BufferedImage canvas) {
+		paintFrame(snapshot.getPotentials(), snapshot.getWeights(), canvas);
+	}
+
+	private void paintFrame(double[] potentials, double[] weights, BufferedImage canvas) {
+		if(canvas.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+			throw new RuntimeException("raster painting needs a TYPE_3BYTE_BGR image, not type " + canvas.getType());
+		}
+		canvasData = ((DataBufferByte) canvas.getRaster().getDataBuffer()).getData();
+		canvasWidth = canvas.getWidth();
+		canvasHeight = canvas.getHeight();
+		if(canvasWidth != shapeWidth || canvasHeight != shapeHeight) {
+			makeShapeRuns(canvasWidth, canvasHeight);
+		}
+
+		//the colors, worked out the same way as Neuron.paint
+		for(int id = 0; id < neurons.size(); id++) {
+			double currentPotential = potentials[id];
+			double potentialRatio = Math.min(Math.abs(currentPotential / neurons.get(id).getThreshold()), 1.0);
+			bodyColors[id] = HelperFunctions.getGradiantRGB(Neuron.POTENTIAL_ZERO_COLOR,
+					currentPotential > 0.0 ? Neuron.POTENTIAL_POS_COLOR : Neuron.POTENTIAL_NEG_COLOR, potentialRatio);
+
+			double maxAbsWeight = 0.0;
+			for(int edge = weightStart[id]; edge < weightStart[id+1]; edge++) {
+				maxAbsWeight = Math.max(maxAbsWeight, Math.abs(weights[edge]));
+			}
+			for(int edge = weightStart[id]; edge < weightStart[id+1]; edge++) {
+				double currentWeight = weights[edge];
+				edgeColors[edge] = HelperFunctions.getGradiantRGB(Neuron.WEIGHT_ZERO_COLOR,
+						currentWeight > 0 ? Neuron.WEIGHT_POS_COLOR : Neuron.WEIGHT_NEG_COLOR, Math.abs(currentWeight / maxAbsWeight));
+			}
+		}
+
+		int numberOfTiles = (canvasHeight + TILE_HEIGHT - 1) / TILE_HEIGHT;
+		Tiles tiles = new Tiles(0, numberOfTiles);
+		if(pool == null) {
+			tiles.compute();
+		}
+		else {
+			pool.invoke(tiles);
+		}
+
+		canvasData = null;
+	}
+
+	//paints tiles [from, to)
+	private class Tiles extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		Tiles(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(pool != null && to - from > 1) {		//split only when invoked in our own pool
+				int middle = (from + to) >>> 1;
+				Tiles low = new Tiles(from, middle);
+				Tiles high = new Tiles(middle, to);
+				low.fork();
+				high.compute();
+				low.join();
+				return;
+			}
+			for(int tile = from; tile < to; tile++) {
+				int top = tile * TILE_HEIGHT;
+				paintRows(top, Math.min(top + TILE_HEIGHT, canvasHeight));
+			}
+		}
+	}
+
+	//everything of the frame in rows [top, bottom), in Neuron.paint's order
+	private void paintRows(int top, int bottom) {
+		for(int id = 0; id < neurons.size(); id++) {
+			fillRuns(bodyRuns[id], bodyColors[id], top, bottom);
+			fillRuns(nameRuns[id], bodyColors[id], top, bottom);
+			for(int edge = weightStart[id]; edge < weightStart[id+1]; edge++) {
+				int argb = edgeColors[edge];
+				int alpha = argb >>> 24;
+				if(alpha == 255) {
+					drawEdge(edge, argb, top, bottom);
+				}
+				else if(alpha != 0) {		//0 leaves the canvas as it is
+					fillRuns(translucentEdgeRuns[edge], argb, top, bottom);
+				}
+			}
+		}
+	}
+
+	//SrcOver of argb onto pixel p
+	private void plot(int p, int argb) {
+		int alpha = argb >>> 24;
+		int i = 3*p;
+		if(alpha == 255) {
+			canvasData[i] = (byte) argb;
+			canvasData[i+1] = (byte) (argb >> 8);
+			canvasData[i+2] = (byte) (argb >> 16);
+		}
+		else if(alpha != 0) {
+			int srcRow = alpha*256;
+			int dstRow = (255 - alpha)*256;
+			canvasData[i] = (byte) (MUL8[srcRow + (argb & 0xff)] + MUL8[dstRow + (canvasData[i] & 0xff)]);
+			canvasData[i+1] = (byte) (MUL8[srcRow + ((argb >> 8) & 0xff)] + MUL8[dstRow + (canvasData[i+1] & 0xff)]);
+			canvasData[i+2] = (byte) (MUL8[srcRow + ((argb >> 16) & 0xff)] + MUL8[dstRow + (canvasData[i+2] & 0xff)]);
+		}
+	}
+
+	private void fillRuns(int[] runs, int argb, int top, int bottom) {
+		//the bytes of rows [top, bottom)
+		int first = 3*top*canvasWidth;
+		int last = 3*bottom*canvasWidth;
+		if(runs.length == 0 || runs[0] >= last || runs[runs.length - 1] <= first) {
+			return;
+		}
+		int alpha = argb >>> 24;
+		byte b = (byte) argb;
+		byte g = (byte) (argb >> 8);
+		byte r = (byte) (argb >> 16);
+		//the source's share of a blend, the same for every pixel
+		int srcB = MUL8[alpha*256 + (argb & 0xff)];
+		int srcG = MUL8[alpha*256 + ((argb >> 8) & 0xff)];
+		int srcR = MUL8[alpha*256 + ((argb >> 16) & 0xff)];
+		int dstRow = (255 - alpha)*256;
+		for(int idx = firstRun(runs, first); idx < runs.length && runs[idx] < last; idx += 2) {
+			int end = runs[idx+1];
+			if(alpha == 255) {
+				for(int i = runs[idx]; i < end; i += 3) {
+					canvasData[i] = b;
+					canvasData[i+1] = g;
+					canvasData[i+2] = r;
+				}
+			}
+			else if(alpha != 0) {
+				for(int i = runs[idx]; i < end; i += 3) {
+					canvasData[i] = (byte) (srcB + MUL8[dstRow + (canvasData[i] & 0xff)]);
+					canvasData[i+1] = (byte) (srcG + MUL8[dstRow + (canvasData[i+1] & 0xff)]);
+					canvasData[i+2] = (byte) (srcR + MUL8[dstRow + (canvasData[i+2] & 0xff)]);
+				}
+			}
+		}
+	}
+
+	//index of the first run starting at byte first or after
+	private static int firstRun(int[] runs, int first) {
+		int low = 0;
+		int high = runs.length / 2;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(runs[2*middle] < first) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return 2*low;
+	}
+
+	//the pixels of Graphics2D.drawLine(x1, y1, x2, y2) in an opaque color that are in rows [top, bottom)
+	private void drawEdge(int edge, int argb, int top, int bottom) {
+		int x = edgeX1[edge];
+		int y = edgeY1[edge];
+		int dx = edgeX2[edge] - x;
+		int dy = edgeY2[edge] - y;
+		if(Math.max(y, y + dy) < top || Math.min(y, y + dy) >= bottom) {
+			return;
+		}
+		int stepX = dx < 0 ? -1 : 1;
+		int stepY = dy < 0 ? -1 : 1;
+		int majorLength = Math.max(Math.abs(dx), Math.abs(dy));
+		int minorLength = Math.min(Math.abs(dx), Math.abs(dy));
+		boolean xMajor = Math.abs(dx) >= Math.abs(dy);
+
+		//rows the line crosses before reaching top (or bottom going up) are skipped to the first step in them:
+		//after k steps the minor axis has moved (2*minorLength*k + majorLength) / (2*majorLength) times
+		int skippedRows = stepY > 0 ? top - y : y - (bottom - 1);
+		int firstStep = 0;
+		int minorSteps = 0;
+		if(skippedRows > 0) {
+			firstStep = xMajor ? (2*majorLength*skippedRows - majorLength + 2*minorLength - 1) / (2*minorLength) : skippedRows;
+			minorSteps = (int)((2L*minorLength*firstStep + majorLength) / (2L*majorLength));
+			x += stepX * (xMajor ? firstStep : minorSteps);
+			y += stepY * (xMajor ? minorSteps : firstStep);
+		}
+
+		int error = -majorLength + 2*minorLength*firstStep - 2*majorLength*minorSteps;
+		for(int step = firstStep; step <= majorLength; step++) {
+			if(y >= top && y < bottom) {
+				if(x >= 0 && x < canvasWidth) {
+					plot(y*canvasWidth + x, argb);
+				}
+			}
+			else if(stepY > 0 ? y >= bottom : y < top) {
+				return;		//moving away from the rows
+			}
+			error += 2*minorLength;
+			if(error >= 0) {
+				if(xMajor) {
+					y += stepY;
+				}
+				else {
+					x += stepX;
+				}
+				error -= 2*majorLength;
+			}
+			if(xMajor) {
+				x += stepX;
+			}
+			else {
+				y += stepY;
+			}
+		}
+	}
+}
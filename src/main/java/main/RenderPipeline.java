@@ -0,0 +1,261 @@
+package main;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.xuggle.mediatool.IMediaWriter;
+
+import neuron.Neuron;
+
+//paints and encodes the video off the simulation thread
+//
+//	simulation --FrameSnapshot--> renderer --image--> encoder
+//
+//the simulation only copies the potentials and weights out (publish), the renderer paints them onto the canvas
+// (like runNetwork does inline, with the FramePainter if there is one), and the encoder writes a copy of the canvas to the writer
+//the snapshot queue is bounded, what happens when the renderer falls behind is the Backpressure
+//the encoder gets ENCODE_BUFFERS copies to work on, so painting the next frame overlaps encoding this one
+//
+//the canvas and writer belong to the pipeline until finish or abort returns
+public class RenderPipeline {
+
+	public enum Backpressure {
+		BLOCK,		//the simulation waits for a free slot, every frame is written
+		DROP		//the simulation never waits, a frame that doesn't fit is not written (the video holds the previous one)
+	}
+
+	private static final int ENCODE_BUFFERS = 2;
+	private static final long POLL_MILLISECONDS = 100;		//how often a waiting thread checks whether the other side failed
+
+	private final List<Neuron> neurons;
+	private final int[] weightStart;
+	private final IMediaWriter writer;
+	private final BufferedImage canvas;
+	private final FramePainter painter;		//null paints with Neuron.paint
+	private final double timeUnitsPerFrame;
+	private final TimeUnit frameTimeUnit;
+	private final Backpressure backpressure;
+
+	private final BlockingQueue<Object> snapshots;
+	private final BlockingQueue<RenderedFrame> renderedFrames = new ArrayBlockingQueue<RenderedFrame>(ENCODE_BUFFERS + 1);
+	private final BlockingQueue<BufferedImage> freeBuffers = new ArrayBlockingQueue<BufferedImage>(ENCODE_BUFFERS);
+
+	private final Thread renderer;
+	private final Thread encoder;
+	private volatile Throwable failure;
+	private boolean finished = false;
+
+	private long publishedFrames = 0;
+	private long droppedFrames = 0;
+
+	public RenderPipeline(
+			List<Neuron> neurons,
+			IMediaWriter writer,
+			BufferedImage canvas,
+			FramePainter painter,
+			double timeUnitsPerFrame,
+			TimeUnit frameTimeUnit,
+			int queueCapacity,
+			Backpressure backpressure) throws IOException {
+		if(queueCapacity < 1) {
+			throw new IOException("render queue needs room for at least one frame");
+		}
+		this.neurons = neurons;
+		this.writer = writer;
+		this.canvas = canvas;
+		this.painter = painter;
+		this.timeUnitsPerFrame = timeUnitsPerFrame;
+		this.frameTimeUnit = frameTimeUnit;
+		this.backpressure = backpressure;
+		this.snapshots = new ArrayBlockingQueue<Object>(queueCapacity);
+
+		weightStart = new int[neurons.size() + 1];
+		for(int id = 0; id < neurons.size(); id++) {
+			weightStart[id+1] = weightStart[id] + neurons.get(id).getNumberOfInputs();
+		}
+
+		for(int b = 0; b < ENCODE_BUFFERS; b++) {
+			freeBuffers.add(new BufferedImage(
+					canvas.getColorModel(),
+					canvas.getRaster().createCompatibleWritableRaster(),
+					canvas.isAlphaPremultiplied(),
+					null));
+		}
+
+		renderer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					render();
+				} catch (InterruptedException e) {
+					//stopped because the encoder failed, or aborted
+				} catch (Throwable t) {
+					fail(t);
+				}
+			}
+		}, "renderer");
+		encoder = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					encode();
+				} catch (InterruptedException e) {
+					//stopped because the renderer failed, or aborted
+				} catch (Throwable t) {
+					fail(t);
+				}
+			}
+		}, "encoder");
+		renderer.setDaemon(true);
+		encoder.setDaemon(true);
+		renderer.start();
+		encoder.start();
+	}
+
+	public long getPublishedFrames() {
+		return publishedFrames;
+	}
+
+	//frames not written, because the renderer was behind (only with DROP)
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	///////////////////////////////////////////////////////
+
+	//call from the simulation thread, at the point the frame would be painted
+	public void publish(long frameIndex) throws IOException {
+		checkFailure();
+		if(backpressure == Backpressure.DROP) {
+			//only this thread adds, so if there's room now the offer will fit
+			if(snapshots.remainingCapacity() == 0) {
+				droppedFrames++;
+				return;
+			}
+			snapshots.add(FrameSnapshot.take(neurons, frameIndex, weightStart));
+		}
+		else {
+			put(FrameSnapshot.take(neurons, frameIndex, weightStart));
+		}
+		publishedFrames++;
+	}
+
+	//wait for every published frame to be written
+	public void finish() throws IOException {
+		if(finished) {
+			return;
+		}
+		finished = true;
+		put(new EndOfFrames());
+		try {
+			renderer.join();
+			encoder.join();
+		} catch (InterruptedException e) {
+			throw new IOException("interrupted while finishing the video", e);
+		}
+		checkFailure();
+	}
+
+	//stop without writing the frames still waiting, when the simulation can't go on
+	//once it returns, neither thread uses the canvas or writer anymore (so the writer can be closed)
+	public void abort() {
+		finished = true;
+		renderer.interrupt();
+		encoder.interrupt();
+		boolean interrupted = false;
+		while(renderer.isAlive() || encoder.isAlive()) {
+			try {
+				renderer.join();
+				encoder.join();
+			} catch (InterruptedException e) {
+				interrupted = true;		//still wait for them, and keep the interrupt for the caller
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void put(Object item) throws IOException {
+		try {
+			while(!snapshots.offer(item, POLL_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+				checkFailure();
+			}
+		} catch (InterruptedException e) {
+			throw new IOException("interrupted while publishing a frame", e);
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if(failure != null) {
+			throw new IOException("video pipeline failed", failure);
+		}
+	}
+
+	private void fail(Throwable t) {
+		failure = t;
+		renderer.interrupt();
+		encoder.interrupt();
+	}
+
+	///////////////////////////////////////////////////////
+
+	private void render() throws InterruptedException {
+		while(true) {
+			Object item = snapshots.take();
+			if(item instanceof EndOfFrames) {
+				renderedFrames.put(new RenderedFrame(-1, null));
+				return;
+			}
+			FrameSnapshot snapshot = (FrameSnapshot) item;
+
+			//paint image
+			if(painter != null) {
+				painter.paint(snapshot, canvas);
+			}
+			else {
+				Graphics2D g = (Graphics2D) canvas.getGraphics();
+				g.setBackground(Color.BLACK);
+				for(int id = 0; id < neurons.size(); id++) {
+					snapshot.paint(neurons.get(id), id, weightStart, g);
+				}
+				g.dispose();
+			}
+
+			//the canvas is painted over by the next frame, the encoder gets a copy
+			BufferedImage buffer = freeBuffers.take();
+			canvas.copyData(buffer.getRaster());
+			renderedFrames.put(new RenderedFrame(snapshot.getFrameIndex(), buffer));
+		}
+	}
+
+	private void encode() throws InterruptedException {
+		while(true) {
+			RenderedFrame frame = renderedFrames.take();
+			if(frame.image == null) {
+				return;
+			}
+			writer.encodeVideo(0, frame.image, (long)(timeUnitsPerFrame*frame.frameIndex), frameTimeUnit);
+			freeBuffers.put(frame.image);
+		}
+	}
+
+	private static class EndOfFrames {
+	}
+
+	private static class RenderedFrame {
+		final long frameIndex;
+		final BufferedImage image;		//null at the end
+
+		RenderedFrame(long frameIndex, BufferedImage image) {
+			this.frameIndex = frameIndex;
+			this.image = image;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package main;
+
+import java.nio.ShortBuffer;
+
+//AudioSource over the remaining samples of a ShortBuffer (ShortBuffer.wrap for a short[])
+public class ShortBufferAudioSource implements AudioSource {
+
+	private final ShortBuffer samples;
+
+	public ShortBufferAudioSource(ShortBuffer samples) {
+		this.samples = samples;
+	}
+
+	public ShortBufferAudioSource(short[] samples) {
+		this(ShortBuffer.wrap(samples));
+	}
+
+	@Override
+	public int read(short[] buffer, int offset, int length) {
+		if(!samples.hasRemaining()) {
+			return -1;
+		}
+		int count = Math.min(length, samples.remaining());
+		samples.get(buffer, offset, count);
+		return count;
+	}
+}
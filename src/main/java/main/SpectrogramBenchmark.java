@@ -0,0 +1,57 @@
+package main;
+
+import java.io.IOException;
+
+//times the spectral front ends on a 10 second tone, 4096 point windows, 100 frames like Main's test example
+//	full: makeSpectrogram, every bin from the FFT
+//	goertzel: a GoertzelBank over just the first numberOfBins bins
+//	auto: makeBinSpectrogram, which picks one of the two
+public class SpectrogramBenchmark {
+
+	private static final int AUDIO_SAMPLE_RATE = 44100;
+	private static final double FRAMES_PER_SECOND = 10.0;
+	private static final int NUMBER_OF_FRAMES = 100;
+	private static final int WINDOW_SIZE = 4096;
+	private static final int[] NUMBER_OF_BINS = {16, 64, 256, 2048};
+	private static final int REPEATS = 10;
+
+	public static void main(String[] args) throws IOException {
+		short[] samples = ToneSynthesizer.tone(
+				(int)(NUMBER_OF_FRAMES/FRAMES_PER_SECOND + 1) * AUDIO_SAMPLE_RATE, 440, AUDIO_SAMPLE_RATE, 0.2);
+		int samplesPerFrame = (int) (AUDIO_SAMPLE_RATE / FRAMES_PER_SECOND);
+
+		for(int numberOfBins : NUMBER_OF_BINS) {
+			int[] bins = new int[numberOfBins];
+			for(int idx = 0; idx < numberOfBins; idx++) {
+				bins[idx] = idx;
+			}
+			GoertzelBank bank = new GoertzelBank(WINDOW_SIZE, bins);
+			double[] magnitudes = new double[numberOfBins];
+
+			//best of REPEATS, the first ones are warming up
+			long full = Long.MAX_VALUE;
+			long goertzel = Long.MAX_VALUE;
+			long auto = Long.MAX_VALUE;
+			for(int repeat = 0; repeat < REPEATS; repeat++) {
+				long start = System.nanoTime();
+				HelperFunctions.makeSpectrogram(samples, AUDIO_SAMPLE_RATE, FRAMES_PER_SECOND, NUMBER_OF_FRAMES, WINDOW_SIZE);
+				full = Math.min(full, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				for(int frameIndex = 0; frameIndex < NUMBER_OF_FRAMES; frameIndex++) {
+					bank.magnitudes(samples, frameIndex * samplesPerFrame, magnitudes);
+				}
+				goertzel = Math.min(goertzel, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				HelperFunctions.makeBinSpectrogram(samples, AUDIO_SAMPLE_RATE, FRAMES_PER_SECOND, NUMBER_OF_FRAMES, WINDOW_SIZE, bins);
+				auto = Math.min(auto, System.nanoTime() - start);
+			}
+
+			System.out.println(numberOfBins + " bins:"
+					+ "\tfull " + full/1e6 + " ms"
+					+ "\tgoertzel " + goertzel/1e6 + " ms"
+					+ "\tauto (" + (GoertzelBank.isCheaperThanFFT(WINDOW_SIZE, numberOfBins) ? "goertzel" : "fft") + ") " + auto/1e6 + " ms");
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+//makeSpectrogram results kept between runs
+// the key is a hash of the samples and every makeSpectrogram parameter
+// each spectrogram is a binary file in the directory
+//	header: MAGIC, numberOfFrames, numberOfBins, 0 (ints), then the values frame by frame (doubles)
+// the most recently used ones are also kept in memory
+//the files are capped at maxBytesOnDisk, least recently used (by modification time) are deleted first
+//
+//thread safe: a miss is computed holding only its key's lock (one of KEY_LOCKS, by the key's hash),
+// so different spectrograms are read or computed at the same time, and the same one is only computed once
+//
+//the returned arrays are shared with the cache, don't modify them
+public class SpectrogramCache {
+
+	private static final int MAGIC = 0x53504543;	//SPEC
+	private static final int HEADER_SIZE = 16;
+	private static final String SUFFIX = ".spec";
+	private static final int HASH_CHUNK_SIZE = 1 << 16;
+	private static final int KEY_LOCKS = 64;
+	private static final int READ_BUFFER_SIZE = 1 << 16;
+
+	private final File directory;
+	private final long maxBytesOnDisk;
+	private final Map<String, double[][]> memory;		//guarded by this
+	private final Object[] keyLocks = new Object[KEY_LOCKS];
+
+	private long hits = 0;
+	private long diskHits = 0;
+	private long misses = 0;
+
+	public SpectrogramCache(File directory, long maxBytesOnDisk, final int maxEntriesInMemory) throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("can't make spectrogram cache directory " + directory);
+		}
+		this.directory = directory;
+		this.maxBytesOnDisk = maxBytesOnDisk;
+		for(int idx = 0; idx < KEY_LOCKS; idx++) {
+			keyLocks[idx] = new Object();
+		}
+		this.memory = new LinkedHashMap<String, double[][]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, double[][]> eldest) {
+				return size() > maxEntriesInMemory;
+			}
+		};
+	}
+
+	//in memory, on disk, computed
+	public synchronized String getStats() {
+		return hits + " in memory, " + diskHits + " on disk, " + misses + " computed";
+	}
+
+	///////////////////////////////////////////////////////
+
+	//same as HelperFunctions.makeSpectrogram
+	public double[][] makeSpectrogram(short[] samples, double audioSampleRate, double framesPerSecond, int numberOfFrames, int windowSize, int numberOfBins, ForkJoinPool pool) throws IOException {
+		return makeSpectrogram(ShortBuffer.wrap(samples), audioSampleRate, framesPerSecond, numberOfFrames, windowSize, numberOfBins, pool);
+	}
+	
+	//the key covers the samples from the buffer's position to its limit
+	public double[][] makeSpectrogram(ShortBuffer samples, double audioSampleRate, double framesPerSecond, int numberOfFrames, int windowSize, int numberOfBins, ForkJoinPool pool) throws IOException {
+		String key = key(samples, audioSampleRate, framesPerSecond, numberOfFrames, windowSize, numberOfBins);
+
+		synchronized(keyLocks[(key.hashCode() & 0x7fffffff) % KEY_LOCKS]) {
+			//checked again under the key's lock, another thread may have just made it
+			synchronized(this) {
+				double[][] spectrogram = memory.get(key);
+				if(spectrogram != null) {
+					hits++;
+					return spectrogram;
+				}
+			}
+
+			File file = new File(directory, key + SUFFIX);
+			if(file.isFile()) {
+				double[][] spectrogram = read(file, numberOfFrames, numberOfBins);
+				if(spectrogram != null) {
+					file.setLastModified(System.currentTimeMillis());
+					synchronized(this) {
+						diskHits++;
+						memory.put(key, spectrogram);
+					}
+					return spectrogram;
+				}
+			}
+
+			double[][] spectrogram = HelperFunctions.makeSpectrogram(samples, audioSampleRate, framesPerSecond, numberOfFrames, windowSize, numberOfBins, pool);
+			write(file, spectrogram, numberOfBins);
+			synchronized(this) {
+				misses++;
+				evict(file);
+				memory.put(key, spectrogram);
+			}
+			return spectrogram;
+		}
+	}
+
+	private static String key(ShortBuffer samples, double audioSampleRate, double framesPerSecond, int numberOfFrames, int windowSize, int numberOfBins) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("no SHA-256", e);
+		}
+
+		ByteBuffer parameters = ByteBuffer.allocate(2*8 + 3*4);
+		parameters.putDouble(audioSampleRate).putDouble(framesPerSecond).putInt(numberOfFrames).putInt(windowSize).putInt(numberOfBins);
+		digest.update(parameters.array());
+
+		//big endian, in chunks (the samples may be a mapped file much larger than the heap)
+		ByteBuffer bytes = ByteBuffer.allocate(2*HASH_CHUNK_SIZE);
+		ShortBuffer chunk = bytes.asShortBuffer();
+		ShortBuffer remaining = samples.duplicate();
+		while(remaining.hasRemaining()) {
+			int count = Math.min(HASH_CHUNK_SIZE, remaining.remaining());
+			ShortBuffer part = remaining.duplicate();
+			part.limit(part.position() + count);
+			chunk.clear();
+			chunk.put(part);
+			digest.update(bytes.array(), 0, 2*count);
+			remaining.position(remaining.position() + count);
+		}
+
+		StringBuilder key = new StringBuilder();
+		for(byte b : digest.digest()) {
+			key.append(String.format("%02x", b));
+		}
+		return key.toString();
+	}
+
+	///////////////////////////////////////////////////////
+
+	//null if the file isn't a spectrogram of this shape (a hash collision or a broken write), or is gone
+	//a plain read, the values are copied into the arrays anyway, and the file is closed (deletable) once this returns
+	private static double[][] read(File file, int numberOfFrames, int numberOfBins) throws IOException {
+		if(file.length() != HEADER_SIZE + 8L*numberOfFrames*numberOfBins) {
+			return null;
+		}
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), READ_BUFFER_SIZE));
+		} catch (FileNotFoundException e) {
+			return null;		//evicted since it was found
+		}
+		try {
+			if(in.readInt() != MAGIC || in.readInt() != numberOfFrames || in.readInt() != numberOfBins) {
+				return null;
+			}
+			in.readInt();
+
+			//a frame at a time, through one byte array
+			byte[] frameBytes = new byte[8*numberOfBins];
+			DoubleBuffer frameValues = ByteBuffer.wrap(frameBytes).asDoubleBuffer();
+			double[][] spectrogram = new double[numberOfFrames][numberOfBins];
+			for(int frameIndex = 0; frameIndex < numberOfFrames; frameIndex++) {
+				in.readFully(frameBytes);
+				frameValues.rewind();
+				frameValues.get(spectrogram[frameIndex]);
+			}
+			return spectrogram;
+		} finally {
+			in.close();
+		}
+	}
+
+	//written to a temporary file first, so a crash never leaves a partial spectrogram under the key
+	private static void write(File file, double[][] spectrogram, int numberOfBins) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 8*spectrogram.length*numberOfBins);
+		buffer.putInt(MAGIC).putInt(spectrogram.length).putInt(numberOfBins).putInt(0);
+		DoubleBuffer values = buffer.asDoubleBuffer();
+		for(double[] frame : spectrogram) {
+			values.put(frame);
+		}
+		buffer.rewind();
+
+		File temporary = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temporary);
+		try {
+			FileChannel channel = out.getChannel();
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} finally {
+			out.close();
+		}
+		if(!temporary.renameTo(file)) {
+			temporary.delete();
+			throw new IOException("can't write spectrogram cache file " + file);
+		}
+	}
+
+	//delete the least recently used files until the directory fits in maxBytesOnDisk (keep is never deleted)
+	private void evict(File keep) {
+		File[] files = directory.listFiles();
+		if(files == null) {
+			return;
+		}
+
+		long totalBytes = 0;
+		for(File f : files) {
+			if(f.getName().endsWith(SUFFIX)) {
+				totalBytes += f.length();
+			}
+		}
+		if(totalBytes <= maxBytesOnDisk) {
+			return;
+		}
+
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				long am = a.lastModified();
+				long bm = b.lastModified();
+				return am < bm ? -1 : (am == bm ? 0 : +1);
+			}
+		});
+		for(File f : files) {
+			if(totalBytes <= maxBytesOnDisk) {
+				break;
+			}
+			if(f.getName().endsWith(SUFFIX) && !f.equals(keep)) {
+				long length = f.length();
+				if(f.delete()) {
+					totalBytes -= length;
+				}
+				else if(f.exists()) {
+					//e.g. open in another process, it's tried again on the next eviction
+					System.out.println("can't delete spectrogram cache file " + f + ", cache is over its size");
+				}
+			}
+		}
+	}
+}
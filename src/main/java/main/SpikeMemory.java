@@ -3,7 +3,7 @@ package main;
 import neuron.Neuron;
 
 public class SpikeMemory {
-	public Long time;
+	public long time;
 	
 	public Neuron neuron;
 	public boolean isSensory;
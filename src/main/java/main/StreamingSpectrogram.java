@@ -0,0 +1,126 @@
+package main;
+
+import java.io.IOException;
+
+//makeSpectrogram one frame at a time, pulling the samples from an AudioSource as they are needed
+// only the current window of samples is kept (a ring buffer), so memory doesn't grow with the length of the audio
+//
+//makeSpectrogram normalizes by the max of the whole clip, which isn't known until the end, so instead either
+//	RUNNING_MAX: by the max seen so far (the same as makeSpectrogram once the loudest frame has gone by)
+//	PER_FRAME: by the frame's own max
+//the max is over the whole spectrum, like makeSpectrogram
+public class StreamingSpectrogram {
+
+	public enum Normalization {
+		RUNNING_MAX,
+		PER_FRAME
+	}
+
+	private static final int CHUNK_SIZE = 1024;
+
+	private final AudioSource source;
+	private final int samplesPerFrame;
+	private final int windowSize;
+	private final int numberOfBins;
+	private final Normalization normalization;
+
+	private final short[] chunk = new short[CHUNK_SIZE];
+	private int chunkPosition = 0;
+	private int chunkLength = 0;
+	private boolean ended = false;
+
+	//sample i of the audio is at window[i % windowSize], for the windowSize samples before windowEnd
+	private final short[] window;
+	private long windowEnd = 0;
+
+	private int frameIndex = 0;
+	private double max = 0.0;
+
+	public StreamingSpectrogram(AudioSource source, double audioSampleRate, double framesPerSecond, int windowSize, int numberOfBins, Normalization normalization) {
+		if(numberOfBins < 0 || numberOfBins > windowSize) {
+			throw new RuntimeException("number of bins out of bounds: " + numberOfBins + " / " + windowSize);
+		}
+		this.source = source;
+		this.samplesPerFrame = (int) (audioSampleRate / framesPerSecond);
+		this.windowSize = windowSize;
+		this.numberOfBins = numberOfBins;
+		this.normalization = normalization;
+		this.window = new short[windowSize];
+		FFTPlan.of(windowSize);		//fail early on a bad size
+	}
+
+	public int getNumberOfBins() {
+		return numberOfBins;
+	}
+
+	//index of the next frame
+	public int getFrameIndex() {
+		return frameIndex;
+	}
+
+	//the largest magnitude so far
+	public double getMax() {
+		return max;
+	}
+
+	///////////////////////////////////////////////////////
+
+	//the next frame's numberOfBins normalized magnitudes, false (and frame untouched) once the audio runs out
+	public boolean nextFrame(double[] frame) throws IOException {
+		long frameStart = (long) frameIndex * samplesPerFrame;
+		long frameEnd = frameStart + windowSize;
+
+		//anything before the frame is skipped, frames further apart than the window don't overlap
+		while(windowEnd < frameEnd) {
+			if(chunkPosition == chunkLength && !readChunk()) {
+				return false;
+			}
+			if(windowEnd >= frameStart) {
+				window[(int) (windowEnd % windowSize)] = chunk[chunkPosition];
+			}
+			chunkPosition++;
+			windowEnd++;
+		}
+
+		FFT fft = FFTPlan.of(windowSize).getFFT();
+		double[] re = fft.getReal();
+		int ringStart = (int) (frameStart % windowSize);
+		for(int sampleIndex = 0; sampleIndex < windowSize; sampleIndex++) {
+			int ringIndex = ringStart + sampleIndex;
+			re[sampleIndex] = window[ringIndex < windowSize ? ringIndex : ringIndex - windowSize];
+		}
+		fft.realTransform();
+
+		int halfSpectrumSize = windowSize/2 + 1;
+		double frameMax = 0.0;
+		for(int sampleIndex = 0; sampleIndex < halfSpectrumSize; sampleIndex++) {
+			frameMax = Math.max(frameMax, fft.abs(sampleIndex));
+		}
+		for(int sampleIndex = 0; sampleIndex < numberOfBins; sampleIndex++) {
+			frame[sampleIndex] = fft.abs(sampleIndex < halfSpectrumSize ? sampleIndex : windowSize - sampleIndex);
+		}
+
+		max = Math.max(max, frameMax);
+		double normalizer = normalization == Normalization.PER_FRAME ? frameMax : max;
+		for(int sampleIndex = 0; sampleIndex < numberOfBins; sampleIndex++) {
+			frame[sampleIndex] = normalizer > 0.0 ? frame[sampleIndex] / normalizer : 0.0;
+		}
+
+		frameIndex++;
+		return true;
+	}
+
+	private boolean readChunk() throws IOException {
+		if(ended) {
+			return false;
+		}
+		int count = source.read(chunk, 0, CHUNK_SIZE);
+		if(count < 0) {
+			ended = true;
+			return false;
+		}
+		chunkPosition = 0;
+		chunkLength = count;
+		return true;
+	}
+}
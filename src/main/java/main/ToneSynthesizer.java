@@ -0,0 +1,125 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+//HelperFunctions.getAudioSamples straight into a short[] or ShortBuffer
+//
+//the sine comes from the recurrence sin((n+1)w) = 2cos(w)sin(nw) - sin((n-1)w), one multiply-add per sample
+// it drifts slowly, so it is restarted from Math.sin every RESYNC_INTERVAL samples
+//the Tukey window is 1 except for a taper at each end, and the ends mirror each other,
+// so only the first taper is tabled, once per (size, alpha)
+public class ToneSynthesizer {
+
+	public static final double AMPLITUDE = Short.MAX_VALUE;
+
+	private static final int RESYNC_INTERVAL = 4096;
+
+	//used for ShortBuffers without an accessible array
+	private static final int CHUNK_SIZE = 4096;
+
+	private static final Map<String, double[]> tapers = new HashMap<String, double[]>();
+
+	///////////////////////////////////////////////////////
+
+	//size samples of the tone into target[offset, offset + size)
+	public static void tone(short[] target, int offset, int size, double frequency, int audioSampleRate, double alpha) throws IOException {
+		synthesize(target, offset, 0, size, size, frequency, audioSampleRate, alpha);
+	}
+
+	public static short[] tone(int size, double frequency, int audioSampleRate, double alpha) throws IOException {
+		short[] samples = new short[size];
+		tone(samples, 0, size, frequency, audioSampleRate, alpha);
+		return samples;
+	}
+
+	//size samples of the tone at the target's position, advancing it
+	public static void tone(ShortBuffer target, int size, double frequency, int audioSampleRate, double alpha) throws IOException {
+		if(target.remaining() < size) {
+			throw new IOException("no room for " + size + " samples: " + target.remaining());
+		}
+		if(target.hasArray()) {
+			synthesize(target.array(), target.arrayOffset() + target.position(), 0, size, size, frequency, audioSampleRate, alpha);
+			target.position(target.position() + size);
+			return;
+		}
+		short[] chunk = new short[Math.min(CHUNK_SIZE, size)];
+		for(int from = 0; from < size; from += chunk.length) {
+			int to = Math.min(from + chunk.length, size);
+			synthesize(chunk, 0, from, to, size, frequency, audioSampleRate, alpha);
+			target.put(chunk, 0, to - from);
+		}
+	}
+
+	//each frequency for samplesPerTone samples, one after another (like Main's test audio)
+	public static short[] tones(double[] frequencies, int samplesPerTone, int audioSampleRate, double alpha) throws IOException {
+		short[] samples = new short[frequencies.length * samplesPerTone];
+		for(int idx = 0; idx < frequencies.length; idx++) {
+			tone(samples, idx * samplesPerTone, samplesPerTone, frequencies[idx], audioSampleRate, alpha);
+		}
+		return samples;
+	}
+
+	public static void tones(ShortBuffer target, double[] frequencies, int samplesPerTone, int audioSampleRate, double alpha) throws IOException {
+		for(double frequency : frequencies) {
+			tone(target, samplesPerTone, frequency, audioSampleRate, alpha);
+		}
+	}
+
+	///////////////////////////////////////////////////////
+
+	//samples [from, to) of a size long tone, into target[offset...]
+	private static void synthesize(short[] target, int offset, int from, int to, int size, double frequency, int audioSampleRate, double alpha) throws IOException {
+		if(from < 0 || to > size) {
+			throw new IOException("samples out of bounds: [" + from + ", " + to + ") / " + size);
+		}
+		double[] taper = getTaper(size, alpha);
+		int taperEnd = size - taper.length;		//[taper.length, taperEnd) is all 1
+
+		//frequency = (periods/second)
+		//sample rate = (samples/second)
+		//frquency / sample rate = (periods/sample)
+		double w = 2*Math.PI*(frequency/audioSampleRate);
+		double twoCos = 2*Math.cos(w);
+		double previous = 0.0;
+		double current = 0.0;
+		for(int idx = from; idx < to; idx++) {
+			if((idx - from) % RESYNC_INTERVAL == 0) {
+				current = Math.sin(2*Math.PI*idx*(frequency/audioSampleRate));
+				previous = Math.sin(2*Math.PI*(idx-1)*(frequency/audioSampleRate));
+			}
+			else {
+				double next = twoCos*current - previous;
+				previous = current;
+				current = next;
+			}
+
+			double v = AMPLITUDE * current;
+			if(idx < taper.length) {
+				v *= taper[idx];
+			}
+			else if(idx >= taperEnd) {
+				v *= taper[size - 1 - idx];
+			}
+			target[offset + idx - from] = (short) v;
+		}
+	}
+
+	//tukeyWindow(n, size, alpha) for the n under the window's low cut
+	static synchronized double[] getTaper(int size, double alpha) throws IOException {
+		String key = size + " " + alpha;
+		double[] taper = tapers.get(key);
+		if(taper == null) {
+			double lowCut = (alpha*(size-1)) / 2.0;
+			int length = Math.min((int) Math.ceil(lowCut), (size+1)/2);
+			taper = new double[length];
+			for(int n = 0; n < length; n++) {
+				taper[n] = HelperFunctions.tukeyWindow(n, size, alpha);
+			}
+			tapers.put(key, taper);
+		}
+		return taper;
+	}
+}
@@ -4,34 +4,87 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.ShortBuffer;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.tuple.Pair;
-
 import com.xuggle.mediatool.IMediaWriter;
 
+import neuron.CompiledNetwork;
+import neuron.LearningWave;
 import neuron.Neuron;
+import neuron.ParallelFrameStep;
+import neuron.SpikeScheduler;
 
 public class TrainingExample {
 
+	//sensory amplitudes under this (the spectrogram is normalized to 1) are too quiet to matter, and aren't input at all
+	public static final double SENSORY_AMPLITUDE_EPSILON = 1e-6;
+
 	private short[] samples;
-	private double[][] spectrogram;
 	
 	private List<Neuron> neurons;	//all neurons
 
 	//TODO: make a neuron -> double map, rather than 2 lists
 	private List<Neuron> positiveActiveNeurons;	//those neurons that should be active
 	private List<Neuron> negativeUnactiveNeurons;	//those neurons that should be active
-	private Map<Integer, List<Pair<Neuron, SpikeMemory>>> sensoryEvents = new HashMap<Integer, List<Pair<Neuron, SpikeMemory>>>();
+	
+	//the same, as neuron ids (index into neurons), in list order, and as masks so membership is O(1)
+	private int[] positiveIds;
+	private int[] negativeIds;
+	private BitSet positiveMask;
+	private BitSet negativeMask;
+	private BitSet forcedMask = new BitSet();	//natural spikes of these are skipped, they're force spiked instead
+	
+	//the sensory input of every frame, in compressed sparse rows (all positive)
+	// frame f inputs sensoryAmplitudes[i] into sensory neuron sensoryIndexes[i], for sensoryStart[f] <= i < sensoryStart[f+1]
+	// quiet bins (under SENSORY_AMPLITUDE_EPSILON) are left out
+	private int[] sensoryStart;
+	private int[] sensoryIndexes;
+	private double[] sensoryAmplitudes;
+	
+	//instead of the sensory rows, compute each frame's sensory input from the audio as it runs
+	private StreamingSpectrogram stream;
+	private double[] streamFrame;
+	private boolean streamRun = false;	//the stream can't be rewound, so a streamed example runs once
 	
 	private int numberOfRunningFrames;
+	private int numberOfSensoryNeurons;
 	private double timeUnitsPerFrame;
 	private TimeUnit frameTimeUnit;
 	
+	//only re-check neurons that received input or learned, rather than every neuron every frame
+	private boolean eventDriven = false;
+	private SpikeScheduler scheduler;
+	
+	//decide and spike out on a fork-join pool (ignored when event driven)
+	private ParallelFrameStep parallelStep;
+	
+	//learn all forced neurons of a frame as one breadth first wave, rather than recursing from each one
+	private boolean waveLearning = false;
+	private LearningWave learningWave;
+	
+	//with wave learning, defer the weight changes of a frame and apply them in one pass (see LearningWave)
+	private boolean batchedLearning = false;
+	
+	//when writing, paint and encode on other threads (see RenderPipeline), 0 paints inline
+	private int renderQueueCapacity = 0;
+	private RenderPipeline.Backpressure renderBackpressure = RenderPipeline.Backpressure.BLOCK;
+	private RenderPipeline renderPipeline;
+	
+	//paint what Neuron.paint does, but write the pixels straight into the image (see RasterPainter), on rasterPool if not null
+	private boolean rasterPainting = false;
+	private ForkJoinPool rasterPool;
+	private FramePainter painter;
+	
+	//reused every frame, so stepping the network doesn't allocate (ids, see positiveIds)
+	private int[] spikeIds;
+	private int[] naturalSpikeIds;
+	
 	public TrainingExample(
 			double audioSampleRate, 
 			double framesPerSecond, 
@@ -44,116 +97,589 @@ public class TrainingExample {
 			List<Neuron> neurons,		//all neurons
 			List<Neuron> specificallyActiveNeurons,			//those that should be active
 			List<Neuron> specificallyUnactiveNeurons) throws IOException {		//those that should NOT be active
+		this(audioSampleRate, framesPerSecond, numberOfRunningFrames, windowSize, timeUnitsPerFrame, frameTimeUnit,
+				numberOfSensoryNeurons, samples, neurons, specificallyActiveNeurons, specificallyUnactiveNeurons, null, null);
+	}
+	
+	//spectrogramPool (if not null) computes the spectrogram frames in parallel
+	//spectrogramCache (if not null) keeps the spectrogram for the next time the same audio is used
+	public TrainingExample(
+			double audioSampleRate, 
+			double framesPerSecond, 
+			int numberOfRunningFrames,
+			int windowSize,
+			double timeUnitsPerFrame,
+			TimeUnit frameTimeUnit,
+			int numberOfSensoryNeurons,
+			short[] samples, 
+			List<Neuron> neurons,		//all neurons
+			List<Neuron> specificallyActiveNeurons,			//those that should be active
+			List<Neuron> specificallyUnactiveNeurons,		//those that should NOT be active
+			ForkJoinPool spectrogramPool,
+			SpectrogramCache spectrogramCache) throws IOException {
+		this(audioSampleRate, framesPerSecond, numberOfRunningFrames, windowSize, timeUnitsPerFrame, frameTimeUnit,
+				numberOfSensoryNeurons, ShortBuffer.wrap(samples), neurons, specificallyActiveNeurons, specificallyUnactiveNeurons, 
+				spectrogramPool, spectrogramCache);
+		this.samples = samples;		//written with the video
+	}
+	
+	//samples from a buffer (from its position), e.g. a memory mapped WavFile, without copying them
+	// only the spectrogram is kept, so no audio is written with the video
+	public TrainingExample(
+			double audioSampleRate, 
+			double framesPerSecond, 
+			int numberOfRunningFrames,
+			int windowSize,
+			double timeUnitsPerFrame,
+			TimeUnit frameTimeUnit,
+			int numberOfSensoryNeurons,
+			ShortBuffer samples, 
+			List<Neuron> neurons,		//all neurons
+			List<Neuron> specificallyActiveNeurons,			//those that should be active
+			List<Neuron> specificallyUnactiveNeurons,		//those that should NOT be active
+			ForkJoinPool spectrogramPool,
+			SpectrogramCache spectrogramCache) throws IOException {
 		
 		this.numberOfRunningFrames = numberOfRunningFrames;
+		this.numberOfSensoryNeurons = numberOfSensoryNeurons;
 		this.timeUnitsPerFrame = timeUnitsPerFrame;
 		this.frameTimeUnit = frameTimeUnit;
 		
-		this.samples = samples;
 		this.neurons = neurons;
 		this.positiveActiveNeurons = specificallyActiveNeurons;
 		this.negativeUnactiveNeurons = specificallyUnactiveNeurons;
 		
-		if(this.positiveActiveNeurons != null && this.negativeUnactiveNeurons != null) {
-			for(Neuron n : neurons) {
-				if(this.positiveActiveNeurons.contains(n) && this.negativeUnactiveNeurons.contains(n)) {
-					throw new IOException("cant set neuron pos and neg in same training");
+		makeRoleMasks();
+		
+		//only the bins the sensory neurons read
+		double[][] spectrogram;
+		if(spectrogramCache != null) {
+			spectrogram = spectrogramCache.makeSpectrogram(
+					samples, 
+					audioSampleRate, framesPerSecond, 
+					numberOfRunningFrames, windowSize, 
+					numberOfSensoryNeurons,
+					spectrogramPool);
+		}
+		else {
+			spectrogram = HelperFunctions.makeSpectrogram(
+					samples, 
+					audioSampleRate, framesPerSecond, 
+					numberOfRunningFrames, windowSize, 
+					numberOfSensoryNeurons,
+					spectrogramPool);
+		}
+		
+		makeSensoryRows(spectrogram);
+	}
+	
+	private void makeSensoryRows(double[][] spectrogram) {
+		sensoryStart = new int[numberOfRunningFrames + 1];
+		int count = 0;
+		for(int frameIndex = 0; frameIndex < numberOfRunningFrames; frameIndex++) {
+			for(int sampleIndex = 0; sampleIndex < numberOfSensoryNeurons; sampleIndex++) {
+				if(spectrogram[frameIndex][sampleIndex] >= SENSORY_AMPLITUDE_EPSILON) {
+					count++;
 				}
 			}
+			sensoryStart[frameIndex + 1] = count;
 		}
 		
-		spectrogram = HelperFunctions.makeSpectrogram(
-				samples, 
-				audioSampleRate, framesPerSecond, 
-				numberOfRunningFrames, windowSize);
-		
+		sensoryIndexes = new int[count];
+		sensoryAmplitudes = new double[count];
+		int idx = 0;
 		for(int frameIndex = 0; frameIndex < numberOfRunningFrames; frameIndex++) {
-			sensoryEvents.put(frameIndex, new ArrayList<Pair<Neuron, SpikeMemory>>());
 			for(int sampleIndex = 0; sampleIndex < numberOfSensoryNeurons; sampleIndex++) {
 				double amplitude = spectrogram[frameIndex][sampleIndex];
-				sensoryEvents.get(frameIndex).add(
-						Pair.of(neurons.get(sampleIndex),
-								new SpikeMemory(frameIndex, amplitude, true)));
+				if(amplitude >= SENSORY_AMPLITUDE_EPSILON) {
+					sensoryIndexes[idx] = sampleIndex;
+					sensoryAmplitudes[idx] = amplitude;
+					idx++;
+				}
 			}
 		}
 	}
 	
+	//number of sensory inputs over all frames, after leaving out the quiet ones (0 when streamed)
+	public int getNumberOfSensoryInputs() {
+		return sensoryStart == null ? 0 : sensoryStart[numberOfRunningFrames];
+	}
+	
 	
-	public void runNetwork(boolean doWrite, int clock, int maxLearningDepth, IMediaWriter writer, BufferedImage image) {
+	//streamed: nothing is precomputed, every frame's sensory input is pulled from the stream while running
+	// so memory doesn't depend on the length of the audio, but the example can only run once (running it again throws)
+	// (and no audio is written with the video)
+	public TrainingExample(
+			StreamingSpectrogram stream,
+			int numberOfRunningFrames,		//at most, stops early if the stream ends
+			double timeUnitsPerFrame,
+			TimeUnit frameTimeUnit,
+			int numberOfSensoryNeurons,
+			List<Neuron> neurons,		//all neurons
+			List<Neuron> specificallyActiveNeurons,			//those that should be active
+			List<Neuron> specificallyUnactiveNeurons) throws IOException {		//those that should NOT be active
+		
+		if(stream.getNumberOfBins() < numberOfSensoryNeurons) {
+			throw new IOException("stream has " + stream.getNumberOfBins() + " bins for " + numberOfSensoryNeurons + " sensory neurons");
+		}
+		
+		this.numberOfRunningFrames = numberOfRunningFrames;
+		this.numberOfSensoryNeurons = numberOfSensoryNeurons;
+		this.timeUnitsPerFrame = timeUnitsPerFrame;
+		this.frameTimeUnit = frameTimeUnit;
+		
+		this.stream = stream;
+		this.streamFrame = new double[stream.getNumberOfBins()];
+		this.neurons = neurons;
+		this.positiveActiveNeurons = specificallyActiveNeurons;
+		this.negativeUnactiveNeurons = specificallyUnactiveNeurons;
+		
+		makeRoleMasks();
+	}
+	
+	private void makeRoleMasks() throws IOException {
+		Map<Neuron, Integer> ids = new HashMap<Neuron, Integer>();
+		for(int id = 0; id < neurons.size(); id++) {
+			ids.put(neurons.get(id), id);
+		}
+		positiveIds = toIds(ids, positiveActiveNeurons);
+		negativeIds = toIds(ids, negativeUnactiveNeurons);
+		positiveMask = toMask(positiveIds);
+		negativeMask = toMask(negativeIds);
+		
+		if(positiveMask != null && negativeMask != null) {
+			if(positiveMask.intersects(negativeMask)) {
+				throw new IOException("cant set neuron pos and neg in same training");
+			}
+			forcedMask.or(positiveMask);
+			forcedMask.or(negativeMask);
+		}
+	}
+	
+	private static int[] toIds(Map<Neuron, Integer> ids, List<Neuron> neuronList) throws IOException {
+		if(neuronList == null) {
+			return null;
+		}
+		int[] listIds = new int[neuronList.size()];
+		for(int idx = 0; idx < neuronList.size(); idx++) {
+			Integer id = ids.get(neuronList.get(idx));
+			if(id == null) {
+				throw new IOException("forced neuron " + neuronList.get(idx).getName() + " is not part of this network");
+			}
+			listIds[idx] = id;
+		}
+		return listIds;
+	}
+	
+	private BitSet toMask(int[] listIds) {
+		if(listIds == null) {
+			return null;
+		}
+		BitSet mask = new BitSet(neurons.size());
+		for(int id : listIds) {
+			mask.set(id);
+		}
+		return mask;
+	}
+	
+	
+	public boolean isEventDriven() {
+		return eventDriven;
+	}
+	
+	public void setEventDriven(boolean eventDriven) {
+		this.eventDriven = eventDriven;
+	}
+	
+	
+	public ParallelFrameStep getParallelStep() {
+		return parallelStep;
+	}
+	
+	//null for the serial step, can be shared by examples over the same neurons
+	public void setParallelStep(ParallelFrameStep parallelStep) {
+		this.parallelStep = parallelStep;
+	}
+	
+	
+	public boolean isWaveLearning() {
+		return waveLearning;
+	}
+	
+	public void setWaveLearning(boolean waveLearning) {
+		this.waveLearning = waveLearning;
+	}
+	
+	public boolean isBatchedLearning() {
+		return batchedLearning;
+	}
+	
+	public void setBatchedLearning(boolean batchedLearning) {
+		this.batchedLearning = batchedLearning;
+	}
+	
+	
+	public int getRenderQueueCapacity() {
+		return renderQueueCapacity;
+	}
+	
+	public RenderPipeline.Backpressure getRenderBackpressure() {
+		return renderBackpressure;
+	}
+	
+	//queueCapacity snapshots can wait to be painted, 0 to paint inline
+	public void setPipelinedRendering(int queueCapacity, RenderPipeline.Backpressure backpressure) {
+		this.renderQueueCapacity = queueCapacity;
+		this.renderBackpressure = backpressure;
+	}
+	
+	public boolean isRasterPainting() {
+		return rasterPainting;
+	}
+	
+	//the image must be TYPE_3BYTE_BGR
+	public void setRasterPainting(boolean rasterPainting, ForkJoinPool rasterPool) {
+		this.rasterPainting = rasterPainting;
+		this.rasterPool = rasterPool;
+		this.painter = null;
+	}
+	
+	//of the last run that wrote, null if it painted inline
+	public RenderPipeline getRenderPipeline() {
+		return renderPipeline;
+	}
+	
+	
+	public void runNetwork(boolean doWrite, int clock, int maxLearningDepth, IMediaWriter writer, BufferedImage image) throws IOException {
+		startStream();
+		
 		//the past input spikes don't matter to this learning phase
 		for(Neuron n : neurons) {
 			n.clearInputSpikes();
 		}
-
 		
-		for(int frameIndex = 0; frameIndex < numberOfRunningFrames; frameIndex++) {
-			if(doWrite && frameIndex > 0 && frameIndex % 5 == 0) {	//dowrite is the only big one
-				System.out.println("\tframeIndex: " + frameIndex + " / " + numberOfRunningFrames);
+		if(spikeIds == null) {
+			spikeIds = new int[neurons.size()];
+			naturalSpikeIds = new int[neurons.size()];
+		}
+		
+		if(waveLearning) {
+			if(learningWave == null) {
+				learningWave = new LearningWave(neurons);
+			}
+			learningWave.setBatched(batchedLearning);
+		}
+		
+		if(eventDriven) {
+			if(scheduler == null) {
+				scheduler = new SpikeScheduler(neurons);
 			}
+			scheduler.reset();
+		}
+		
+		if(doWrite && rasterPainting) {
+			if(painter == null) {
+				painter = new RasterPainter(neurons, rasterPool);
+			}
+			painter.reset();	//the image may have been painted by someone else since
+		}
+		
+		renderPipeline = null;
+		if(doWrite && renderQueueCapacity > 0) {
+			renderPipeline = new RenderPipeline(neurons, writer, image, rasterPainting ? painter : null, 
+					timeUnitsPerFrame, frameTimeUnit, renderQueueCapacity, renderBackpressure);
+		}
 
-			//add any sensory events that may have happened in this frame
-			List<Pair<Neuron, SpikeMemory>> frameSensoryEvents = sensoryEvents.get(frameIndex);
-			if(frameSensoryEvents != null) {
-				for(Pair<Neuron, SpikeMemory> p : frameSensoryEvents) {
-					SpikeMemory sm = p.getRight();
-					p.getLeft().addSensoryInput(frameIndex, sm.sensoryAmplitude, sm.isPositive);
+		
+		//if anything fails before the pipeline finishes, stop its threads, so they let go of the writer
+		boolean pipelineFinished = false;
+		try {
+			for(int frameIndex = 0; frameIndex < numberOfRunningFrames; frameIndex++) {
+				if(doWrite && frameIndex > 0 && frameIndex % 5 == 0) {	//dowrite is the only big one
+					System.out.println("\tframeIndex: " + frameIndex + " / " + numberOfRunningFrames);
 				}
-			}
 
-			//which should spike this frame
-			//this stage prevents cascading spikes in a single frame 
-			List<Neuron> spikeNeurons = new ArrayList<Neuron>();
+				//add any sensory events that may have happened in this frame
+				if(!addSensoryInputs(frameIndex)) {
+					break;		//stream ended
+				}
+
+				//which should spike this frame
+				//this stage prevents cascading spikes in a single frame 
+				int spikeCount;
 			
-			for(Neuron n : neurons) {
-				if(n.shouldSpike(frameIndex)) {
-					spikeNeurons.add(n);
+				if(eventDriven) {
+					spikeCount = scheduler.findSpikingNeurons(frameIndex, spikeIds);
+				}
+				else if(parallelStep != null) {
+					spikeCount = parallelStep.findSpikingNeurons(frameIndex, spikeIds);
+				}
+				else {
+					spikeCount = 0;
+					for(int id = 0; id < neurons.size(); id++) {
+						if(neurons.get(id).shouldSpike(frameIndex)) {
+							spikeIds[spikeCount++] = id;
+						}
+					}
 				}
-			}
 
 
-			//let those which need to naturally spike, spike
-			for(Neuron n : spikeNeurons) {
-				//these will be force spiked later
-				if(positiveActiveNeurons != null && negativeUnactiveNeurons != null) {
-					if(positiveActiveNeurons.contains(n) || negativeUnactiveNeurons.contains(n)) {
+				//let those which need to naturally spike, spike
+				boolean parallelSpikeOut = !eventDriven && parallelStep != null;
+				int naturalSpikeCount = 0;
+				for(int idx = 0; idx < spikeCount; idx++) {
+					int id = spikeIds[idx];
+					//these will be force spiked later
+					if(forcedMask.get(id)) {
 						continue;
 					}
-				}
 				
-				n.spikeOut(frameIndex);
-			}
+					if(eventDriven) {
+						scheduler.spikeOut(id, frameIndex);
+					}
+					else if(parallelSpikeOut) {
+						naturalSpikeIds[naturalSpikeCount++] = id;
+					}
+					else {
+						neurons.get(id).spikeOut(frameIndex);
+					}
+				}
+				if(parallelSpikeOut) {
+					parallelStep.spikeOut(naturalSpikeIds, naturalSpikeCount, frameIndex);
+				}
 			
-			//forced learning
-			if(positiveActiveNeurons != null) {
-				for(Neuron n : positiveActiveNeurons) {
-					n.learn(frameIndex, true, 0, maxLearningDepth);
+				//forced learning
+				if(positiveIds != null) {
+					for(int id : positiveIds) {
+						learn(id, frameIndex, true, maxLearningDepth);
+					}
 				}
-			}
 			
-			if(negativeUnactiveNeurons != null) {
-				for(Neuron n : negativeUnactiveNeurons) {
-					n.learn(frameIndex, false, 0, maxLearningDepth);
+				if(negativeIds != null) {
+					for(int id : negativeIds) {
+						learn(id, frameIndex, false, maxLearningDepth);
+					}
+				}
+			
+				if(waveLearning) {
+					if(eventDriven) {
+						scheduler.learn(learningWave, frameIndex, maxLearningDepth);
+					}
+					else {
+						learningWave.learn(frameIndex, maxLearningDepth, null);
+					}
 				}
-			}
 
 
-			//paint and write image to image stream
-			if(doWrite) {
-				//paint image
-				Graphics2D g = (Graphics2D) image.getGraphics();
-				g.setBackground(Color.BLACK);
-				for(Neuron n : neurons) {
-					n.paint(frameIndex, g);
+				//paint and write image to image stream
+				if(renderPipeline != null) {
+					renderPipeline.publish(frameIndex);
 				}
+				else if(doWrite) {
+					//paint image
+					if(rasterPainting) {
+						painter.paint(frameIndex, image);
+					}
+					else {
+						Graphics2D g = (Graphics2D) image.getGraphics();
+						g.setBackground(Color.BLACK);
+						for(Neuron n : neurons) {
+							n.paint(frameIndex, g);
+						}
+					}
 				
-				writer.encodeVideo(0, image, (long)(timeUnitsPerFrame*frameIndex), frameTimeUnit);
+					writer.encodeVideo(0, image, (long)(timeUnitsPerFrame*frameIndex), frameTimeUnit);
+				}
+			}
+		
+			if(renderPipeline != null) {
+				renderPipeline.finish();
+			}
+			pipelineFinished = true;
+		} finally {
+			if(renderPipeline != null && !pipelineFinished) {
+				renderPipeline.abort();
 			}
 		}
 		
-		if(doWrite) {
+		if(doWrite && samples != null) {
 			writer.encodeAudio(1, samples, clock, frameTimeUnit);
 		}
 	}
+	
+	
+	//a second run would start wherever the first stopped reading, or with no frames at all
+	private void startStream() throws IOException {
+		if(stream == null) {
+			return;
+		}
+		if(streamRun) {
+			throw new IOException("streamed example already ran, its stream can't be read again");
+		}
+		streamRun = true;
+	}
+	
+	//false if the stream has ended
+	private boolean addSensoryInputs(int frameIndex) throws IOException {
+		if(stream != null) {
+			if(!stream.nextFrame(streamFrame)) {
+				return false;
+			}
+			for(int sampleIndex = 0; sampleIndex < numberOfSensoryNeurons; sampleIndex++) {
+				double amplitude = streamFrame[sampleIndex];
+				if(amplitude >= SENSORY_AMPLITUDE_EPSILON) {
+					addSensoryInput(sampleIndex, frameIndex, amplitude, true);
+				}
+			}
+		}
+		else {
+			for(int idx = sensoryStart[frameIndex]; idx < sensoryStart[frameIndex + 1]; idx++) {
+				addSensoryInput(sensoryIndexes[idx], frameIndex, sensoryAmplitudes[idx], true);
+			}
+		}
+		return true;
+	}
+	
+	//id is the sensory neuron's index in neurons
+	private void addSensoryInput(int id, int frameIndex, double sensoryAmplitude, boolean isPositive) {
+		if(eventDriven) {
+			scheduler.addSensoryInput(id, frameIndex, sensoryAmplitude, isPositive);
+		}
+		else {
+			neurons.get(id).addSensoryInput(frameIndex, sensoryAmplitude, isPositive);
+		}
+	}
+	
+	//false if the stream has ended
+	private boolean addSensoryInputs(CompiledNetwork network, int[] sensoryIds, int frameIndex) throws IOException {
+		if(stream != null) {
+			if(!stream.nextFrame(streamFrame)) {
+				return false;
+			}
+			for(int idx = 0; idx < sensoryIds.length; idx++) {
+				double amplitude = streamFrame[idx];
+				if(amplitude >= SENSORY_AMPLITUDE_EPSILON) {
+					network.addSensoryInput(sensoryIds[idx], frameIndex, amplitude, true);
+				}
+			}
+		}
+		else {
+			for(int idx = sensoryStart[frameIndex]; idx < sensoryStart[frameIndex + 1]; idx++) {
+				network.addSensoryInput(sensoryIds[sensoryIndexes[idx]], frameIndex, sensoryAmplitudes[idx], true);
+			}
+		}
+		return true;
+	}
+	
+	
+	//id is the neuron's index in neurons
+	private void learn(int id, long now, boolean positiveSpike, int maxLearningDepth) {
+		if(waveLearning) {
+			learningWave.add(id, positiveSpike);	//learned together at the end of the frame
+		}
+		else if(eventDriven) {
+			scheduler.learn(neurons.get(id), now, positiveSpike, maxLearningDepth);
+		}
+		else {
+			neurons.get(id).learn(now, positiveSpike, 0, maxLearningDepth);
+		}
+	}
+	
+	
+	//same as runNetwork, headless, on a CompiledNetwork built from this example's neurons
+	public void runNetwork(CompiledNetwork network, int maxLearningDepth) throws IOException {
+		startStream();
+		
+		//the past input spikes don't matter to this learning phase
+		network.clearInputSpikes();
+		
+		int[] positiveIds = toIds(network, this.positiveIds);
+		int[] negativeIds = toIds(network, this.negativeIds);
+		boolean[] forced = new boolean[network.size()];
+		for(int id = forcedMask.nextSetBit(0); id >= 0; id = forcedMask.nextSetBit(id+1)) {
+			forced[network.getId(neurons.get(id))] = true;
+		}
+		
+		int[] sensoryIds = new int[numberOfSensoryNeurons];
+		for(int sampleIndex = 0; sampleIndex < numberOfSensoryNeurons; sampleIndex++) {
+			sensoryIds[sampleIndex] = network.getId(neurons.get(sampleIndex));
+		}
+		
+		int[] spikeIds = new int[network.size()];
+		
+		for(int frameIndex = 0; frameIndex < numberOfRunningFrames; frameIndex++) {
+			//add any sensory events that may have happened in this frame
+			if(!addSensoryInputs(network, sensoryIds, frameIndex)) {
+				break;		//stream ended
+			}
+			
+			//which should spike this frame
+			//this stage prevents cascading spikes in a single frame
+			int spikeCount = network.findSpikingNeurons(frameIndex, spikeIds);
+			
+			//let those which need to naturally spike, spike
+			for(int idx = 0; idx < spikeCount; idx++) {
+				if(!forced[spikeIds[idx]]) {	//these will be force spiked later
+					network.spikeOut(spikeIds[idx], frameIndex);
+				}
+			}
+			
+			//forced learning
+			if(positiveIds != null) {
+				for(int id : positiveIds) {
+					network.learn(id, frameIndex, true, 0, maxLearningDepth);
+				}
+			}
+			
+			if(negativeIds != null) {
+				for(int id : negativeIds) {
+					network.learn(id, frameIndex, false, 0, maxLearningDepth);
+				}
+			}
+		}
+	}
+	
+	//run the frames without any forced spikes or learning, and count how often each neuron spiked
+	// (the output neuron that spiked most is the network's answer for this example)
+	public void countSpikes(CompiledNetwork network, int[] spikeCounts) throws IOException {
+		startStream();
+		network.clearInputSpikes();
+		
+		int[] sensoryIds = new int[numberOfSensoryNeurons];
+		for(int sampleIndex = 0; sampleIndex < numberOfSensoryNeurons; sampleIndex++) {
+			sensoryIds[sampleIndex] = network.getId(neurons.get(sampleIndex));
+		}
+		
+		int[] spikeIds = new int[network.size()];
+		
+		for(int frameIndex = 0; frameIndex < numberOfRunningFrames; frameIndex++) {
+			if(!addSensoryInputs(network, sensoryIds, frameIndex)) {
+				break;		//stream ended
+			}
+			
+			int spikeCount = network.findSpikingNeurons(frameIndex, spikeIds);
+			for(int idx = 0; idx < spikeCount; idx++) {
+				network.spikeOut(spikeIds[idx], frameIndex);
+				spikeCounts[spikeIds[idx]]++;
+			}
+		}
+	}
+	
+	public List<Neuron> getPositiveActiveNeurons() {
+		return positiveActiveNeurons;
+	}
+	
+	//the network's ids of the neurons (by id), in the same order
+	private int[] toIds(CompiledNetwork network, int[] listIds) throws IOException {
+		if(listIds == null) {
+			return null;
+		}
+		int[] networkIds = new int[listIds.length];
+		for(int idx = 0; idx < listIds.length; idx++) {
+			networkIds[idx] = network.getId(neurons.get(listIds[idx]));
+		}
+		return networkIds;
+	}
 
 	
 	
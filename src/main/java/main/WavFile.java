@@ -0,0 +1,139 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+//16 bit mono PCM audio, memory mapped
+// getSamples is a view straight onto the mapped file, nothing is copied or read until it is used,
+// so recordings much larger than the heap can go into makeSpectrogram, a ShortBufferAudioSource or a TrainingExample
+//
+//WAV files are checked for 16 bit mono PCM (the only kind the spectrogram takes) and their data chunk is used
+//raw .pcm files are taken as little endian 16 bit mono from the first byte, at the given sample rate
+public class WavFile {
+
+	//a single mapping can't be larger than this
+	private static final long MAX_MAPPED_SIZE = Integer.MAX_VALUE;
+
+	private static final short FORMAT_PCM = 1;
+	private static final short FORMAT_EXTENSIBLE = (short) 0xFFFE;
+
+	private final File file;
+	private final int sampleRate;
+	private final ShortBuffer samples;
+
+	private WavFile(File file, int sampleRate, ShortBuffer samples) {
+		this.file = file;
+		this.sampleRate = sampleRate;
+		this.samples = samples;
+	}
+
+	public static WavFile open(File file) throws IOException {
+		ByteBuffer bytes = map(file);
+		if(bytes.remaining() < 12 || bytes.getInt(0) != fourCC("RIFF") || bytes.getInt(8) != fourCC("WAVE")) {
+			throw new IOException(file + " is not a WAV file");
+		}
+
+		int sampleRate = -1;
+		int position = 12;
+		while(position + 8 <= bytes.limit()) {
+			int chunkId = bytes.getInt(position);
+			long chunkSize = bytes.getInt(position + 4) & 0xFFFFFFFFL;
+			int chunkStart = position + 8;
+
+			if(chunkId == fourCC("fmt ")) {
+				if(chunkSize < 16) {
+					throw new IOException(file + " has a broken fmt chunk");
+				}
+				short format = bytes.getShort(chunkStart);
+				short channels = bytes.getShort(chunkStart + 2);
+				short bitsPerSample = bytes.getShort(chunkStart + 14);
+				if(format != FORMAT_PCM && format != FORMAT_EXTENSIBLE) {
+					throw new IOException(file + " is not PCM: format " + format);
+				}
+				if(channels != 1 || bitsPerSample != 16) {
+					throw new IOException(file + " has " + channels + " channels of " + bitsPerSample + " bits, only 16 bit mono is supported");
+				}
+				sampleRate = bytes.getInt(chunkStart + 4);
+			}
+
+			else if(chunkId == fourCC("data")) {
+				if(sampleRate < 0) {
+					throw new IOException(file + " has no fmt chunk before its data");
+				}
+				//a truncated recording still has the samples it got
+				long dataEnd = Math.min(chunkStart + chunkSize, bytes.limit());
+				return new WavFile(file, sampleRate, view(bytes, chunkStart, (int) dataEnd));
+			}
+
+			position = (int) Math.min(bytes.limit(), chunkStart + chunkSize + (chunkSize & 1));	//chunks are padded to even sizes
+		}
+		throw new IOException(file + " has no data chunk");
+	}
+
+	public static WavFile openRawPCM(File file, int sampleRate) throws IOException {
+		ByteBuffer bytes = map(file);
+		return new WavFile(file, sampleRate, view(bytes, 0, bytes.limit()));
+	}
+
+	private static ByteBuffer map(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			if(channel.size() > MAX_MAPPED_SIZE) {
+				throw new IOException(file + " is too large to map: " + channel.size() + " bytes");
+			}
+			//the mapping stays valid after the file is closed
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			mapped.order(ByteOrder.LITTLE_ENDIAN);
+			return mapped;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static ShortBuffer view(ByteBuffer bytes, int start, int end) {
+		ByteBuffer data = bytes.duplicate();
+		data.limit(start + ((end - start) & ~1));	//whole samples only
+		data.position(start);
+		return data.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+	}
+
+	//as read with little endian getInt
+	private static int fourCC(String id) {
+		return (id.charAt(0)) | (id.charAt(1) << 8) | (id.charAt(2) << 16) | (id.charAt(3) << 24);
+	}
+
+	///////////////////////////////////////////////////////
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public int getNumberOfSamples() {
+		return samples.limit();
+	}
+
+	//a new read only view of all the samples (each caller gets its own position)
+	public ShortBuffer getSamples() {
+		return samples.asReadOnlyBuffer();
+	}
+
+	//how many whole spectrogram frames fit in the recording
+	public int getNumberOfFrames(double framesPerSecond, int windowSize) {
+		int samplesPerFrame = (int) (sampleRate / framesPerSecond);
+		if(samples.limit() < windowSize) {
+			return 0;
+		}
+		return (samples.limit() - windowSize) / samplesPerFrame + 1;
+	}
+}
@@ -0,0 +1,409 @@
+package neuron;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//structure-of-arrays version of a built List<Neuron>
+// neurons become dense ids (their index in the list)
+// synapses are stored CSR by target neuron (inputStart/inputSource/weights)
+// fan-out is stored as, for each source neuron, the synapse indices in its targets' CSR rows
+//
+//the simulation mirrors Neuron: sensory input, shouldSpike/spikeSign, spikeOut and learn
+// but potentials are kept as decayed running sums (see DecayingSum) in primitive arrays
+// so nothing is boxed or hashed while the network runs
+public class CompiledNetwork {
+
+	//learn looks at input spikes within the recent spike cutoff, remembered as bits in a long
+	// bit k of a synapse's masks is a spike at (synapseTime - k)
+	// assumes at most one spike per synapse per frame, which the two phase frame step guarantees
+	private static final int RECENT_HISTORY_LENGTH = 64;
+
+	private final List<Neuron> neurons;
+	private final Map<Neuron, Integer> ids = new HashMap<Neuron, Integer>();
+	private final int numberOfNeurons;
+
+	//per neuron
+	private final double[] thresholds;
+	private final DecayKernel[] decays;
+	private final double[] potentials;			//sensory + sum(weight * synapse trace), as of potentialTimes
+	private final long[] potentialTimes;
+	private final boolean[] potentialStale;		//weights changed since potentials was built
+	private final double[] sensoryPotentials;	//as of sensoryTimes
+	private final long[] sensoryTimes;
+
+	//per synapse, CSR by target
+	private final int[] inputStart;				//synapses of neuron i are [inputStart[i], inputStart[i+1])
+	private final int[] inputSource;
+	private final double[] weights;
+	private final double[] synapseTraces;		//decayed sum of +1/-1 spikes, as of synapseTimes
+	private final long[] synapseTimes;
+	private final long[] recentPositiveSpikes;
+	private final long[] recentNegativeSpikes;
+
+	//fan-out, by source
+	private final int[] outputStart;			//fan-out of neuron i is [outputStart[i], outputStart[i+1])
+	private final int[] outputSynapse;			//index into the synapse arrays
+	private final int[] outputTarget;
+
+	//learning scratch, indexed by synapse
+	private final int[] learningPowers;
+	private final int[] learningDirections;
+	//sources to back propagate to, by learn layer (a layer's are still being learned while deeper layers fill theirs)
+	private final int maxNumberOfInputs;
+	private int[][] learnSources = new int[0][];
+
+	///////////////////////////////////////////////////////
+
+	public CompiledNetwork(List<Neuron> neurons) throws IOException {
+		this.neurons = neurons;
+		this.numberOfNeurons = neurons.size();
+
+		for(int id = 0; id < numberOfNeurons; id++) {
+			ids.put(neurons.get(id), id);
+		}
+
+		thresholds = new double[numberOfNeurons];
+		decays = new DecayKernel[numberOfNeurons];
+		potentials = new double[numberOfNeurons];
+		potentialTimes = new long[numberOfNeurons];
+		potentialStale = new boolean[numberOfNeurons];
+		sensoryPotentials = new double[numberOfNeurons];
+		sensoryTimes = new long[numberOfNeurons];
+
+		//inputs
+		int numberOfSynapses = 0;
+		inputStart = new int[numberOfNeurons + 1];
+		for(int id = 0; id < numberOfNeurons; id++) {
+			Neuron n = neurons.get(id);
+			thresholds[id] = n.getThreshold();
+			decays[id] = n.getDecayKernel();
+			if(decays[id].getRecentSpikeCutoff() >= RECENT_HISTORY_LENGTH) {
+				throw new IOException("decay of " + n.getName() + " is too slow for the synapse spike history");
+			}
+			inputStart[id] = numberOfSynapses;
+			numberOfSynapses += n.getNumberOfInputs();
+		}
+		inputStart[numberOfNeurons] = numberOfSynapses;
+
+		int maxNumberOfInputs = 0;
+		for(int id = 0; id < numberOfNeurons; id++) {
+			maxNumberOfInputs = Math.max(maxNumberOfInputs, inputStart[id+1] - inputStart[id]);
+		}
+		this.maxNumberOfInputs = maxNumberOfInputs;
+
+		inputSource = new int[numberOfSynapses];
+		weights = new double[numberOfSynapses];
+		synapseTraces = new double[numberOfSynapses];
+		synapseTimes = new long[numberOfSynapses];
+		recentPositiveSpikes = new long[numberOfSynapses];
+		recentNegativeSpikes = new long[numberOfSynapses];
+		learningPowers = new int[numberOfSynapses];
+		learningDirections = new int[numberOfSynapses];
+
+		for(int id = 0; id < numberOfNeurons; id++) {
+			Neuron n = neurons.get(id);
+			for(int idx = 0; idx < n.getNumberOfInputs(); idx++) {
+				inputSource[inputStart[id] + idx] = getId(n.getInputNeuron(idx));
+				weights[inputStart[id] + idx] = n.getInputWeight(idx);
+			}
+		}
+
+		//outputs
+		int numberOfOutputs = 0;
+		outputStart = new int[numberOfNeurons + 1];
+		for(int id = 0; id < numberOfNeurons; id++) {
+			outputStart[id] = numberOfOutputs;
+			numberOfOutputs += neurons.get(id).getOutputs().size();
+		}
+		outputStart[numberOfNeurons] = numberOfOutputs;
+
+		outputSynapse = new int[numberOfOutputs];
+		outputTarget = new int[numberOfOutputs];
+		for(int id = 0; id < numberOfNeurons; id++) {
+			int o = outputStart[id];
+			for(Neuron out : neurons.get(id).getOutputs()) {
+				int target = getId(out);
+				outputTarget[o] = target;
+				outputSynapse[o] = findSynapse(target, id);
+				o++;
+			}
+		}
+	}
+
+	private int findSynapse(int target, int source) throws IOException {
+		for(int s = inputStart[target]; s < inputStart[target+1]; s++) {
+			if(inputSource[s] == source) {
+				return s;
+			}
+		}
+		throw new IOException("output " + neurons.get(target).getName() + " has no input weight for " + neurons.get(source).getName());
+	}
+
+	///////////////////////////////////////////////////////
+
+	public int size() {
+		return numberOfNeurons;
+	}
+
+	public int getId(Neuron n) throws IOException {
+		Integer id = ids.get(n);
+		if(id == null) {
+			throw new IOException("neuron " + n.getName() + " is not part of this network");
+		}
+		return id;
+	}
+
+	public Neuron getNeuron(int id) {
+		return neurons.get(id);
+	}
+
+	public int getNumberOfSynapses() {
+		return weights.length;
+	}
+
+	public double getInputWeight(int target, int source) throws IOException {
+		return weights[findSynapse(target, source)];
+	}
+
+	//push the learned weights back into the Neuron objects (for painting, or to keep training with them)
+	public void copyWeightsToNeurons() {
+		for(int id = 0; id < numberOfNeurons; id++) {
+			Neuron n = neurons.get(id);
+			for(int s = inputStart[id]; s < inputStart[id+1]; s++) {
+				n.setInputWeight(neurons.get(inputSource[s]), weights[s]);
+			}
+		}
+	}
+
+	//all synapse weights, CSR by target (same layout as any other CompiledNetwork of the same neurons)
+	public void getWeights(double[] into) {
+		System.arraycopy(weights, 0, into, 0, weights.length);
+	}
+
+	public void setWeights(double[] from) {
+		System.arraycopy(from, 0, weights, 0, weights.length);
+		Arrays.fill(potentialStale, true);
+	}
+
+	///////////////////////////////////////////////////////
+
+	public double getPotential(int id, long now) {
+		DecayKernel decay = decays[id];
+		if(potentialStale[id]) {
+			//weights changed, rebuild the weighted sum at the time of the last input
+			long potentialTime = potentialTimes[id];
+			double potential = decay.decay(sensoryPotentials[id], potentialTime - sensoryTimes[id]);
+			for(int s = inputStart[id]; s < inputStart[id+1]; s++) {
+				potential += weights[s] * decay.decay(synapseTraces[s], potentialTime - synapseTimes[s]);
+			}
+			potentials[id] = potential;
+			potentialStale[id] = false;
+		}
+		return decay.decay(potentials[id], now - potentialTimes[id]);
+	}
+
+	public boolean shouldSpike(int id, long now) {
+		return Math.abs(getPotential(id, now)) >= thresholds[id];
+	}
+
+	// (-1) (0 - no spike) (+1)
+	public int spikeSign(int id, long now) {
+		double potential = getPotential(id, now);
+		if(Math.abs(potential) >= thresholds[id]) {
+			return potential > 0 ? +1 : -1;
+		}
+		return 0;
+	}
+
+	//fills spikeIds with the neurons that should spike now, returns how many
+	// spikeIds must hold size() entries
+	public int findSpikingNeurons(long now, int[] spikeIds) {
+		int count = 0;
+		for(int id = 0; id < numberOfNeurons; id++) {
+			if(shouldSpike(id, now)) {
+				spikeIds[count++] = id;
+			}
+		}
+		return count;
+	}
+
+	///////////////////////////////////////////////////////
+
+	//sensory input
+	public void addSensoryInput(int id, long now, double sensoryAmplitude, boolean isPositive) {
+		double spikeAmplitude = isPositive ? sensoryAmplitude : -sensoryAmplitude;
+		sensoryPotentials[id] = decays[id].decay(sensoryPotentials[id], now - sensoryTimes[id]) + spikeAmplitude;
+		sensoryTimes[id] = now;
+		addToPotential(id, now, spikeAmplitude);
+	}
+
+	private void receiveSpike(int target, int synapse, long now, boolean isPositive) {
+		long timePassed = now - synapseTimes[synapse];
+		if(timePassed >= RECENT_HISTORY_LENGTH) {
+			recentPositiveSpikes[synapse] = 0;
+			recentNegativeSpikes[synapse] = 0;
+		}
+		else {
+			recentPositiveSpikes[synapse] <<= timePassed;
+			recentNegativeSpikes[synapse] <<= timePassed;
+		}
+
+		double sign;
+		if(isPositive) {
+			recentPositiveSpikes[synapse] |= 1L;
+			sign = +1.0;
+		}
+		else {
+			recentNegativeSpikes[synapse] |= 1L;
+			sign = -1.0;
+		}
+
+		synapseTraces[synapse] = decays[target].decay(synapseTraces[synapse], timePassed) + sign;
+		synapseTimes[synapse] = now;
+		addToPotential(target, now, weights[synapse] * sign);
+	}
+
+	private void addToPotential(int id, long now, double amplitude) {
+		if(potentialStale[id]) {
+			potentialTimes[id] = now;	//rebuilt from the traces, which already include this input
+			return;
+		}
+		potentials[id] = decays[id].decay(potentials[id], now - potentialTimes[id]) + amplitude;
+		potentialTimes[id] = now;
+	}
+
+	//automatic spike, w/o any checking
+	public void spikeOut(int id, long now) {
+		boolean isPositive = spikeSign(id, now) > 0;	//should be -1 or +1...NOT zero
+
+		//send out spikes to neighbors
+		for(int o = outputStart[id]; o < outputStart[id+1]; o++) {
+			receiveSpike(outputTarget[o], outputSynapse[o], now, isPositive);
+		}
+
+		clearInputSpikes(id);		//like reseting the potential
+	}
+
+	public void clearInputSpikes(int id) {
+		for(int s = inputStart[id]; s < inputStart[id+1]; s++) {
+			synapseTraces[s] = 0.0;
+			synapseTimes[s] = 0;
+			recentPositiveSpikes[s] = 0;
+			recentNegativeSpikes[s] = 0;
+		}
+		sensoryPotentials[id] = 0.0;
+		sensoryTimes[id] = 0;
+		potentials[id] = 0.0;
+		potentialTimes[id] = 0;
+		potentialStale[id] = false;
+	}
+
+	public void clearInputSpikes() {
+		for(int id = 0; id < numberOfNeurons; id++) {
+			clearInputSpikes(id);
+		}
+	}
+
+	///////////////////////////////////////////////////////
+
+	//number of remembered spikes on a synapse that are within recentSpikeCutoff of now
+	private int countRecent(long recentSpikes, long now, long synapseTime, double recentSpikeCutoff) {
+		double window = recentSpikeCutoff - (now - synapseTime);	//bit k is recent if k < window
+		if(window <= 0) {
+			return 0;
+		}
+		int bits = (int) Math.min(RECENT_HISTORY_LENGTH, Math.ceil(window));
+		long mask = bits == RECENT_HISTORY_LENGTH ? -1L : (1L << bits) - 1;
+		return Long.bitCount(recentSpikes & mask);
+	}
+
+	//same rules as Neuron.learn, see the notes there
+	public void learn(int id, long now, boolean positiveSpike, int learnLayer, int maxLearningDepth) {
+		int first = inputStart[id];
+		int last = inputStart[id+1];
+		if(first == last) {
+			return;		//no inputs to learn
+		}
+
+		double recentSpikeCutoff = decays[id].getRecentSpikeCutoff();
+		for(int s = first; s < last; s++) {
+			int positiveSpikes = countRecent(recentPositiveSpikes[s], now, synapseTimes[s], recentSpikeCutoff);
+			int negativeSpikes = countRecent(recentNegativeSpikes[s], now, synapseTimes[s], recentSpikeCutoff);
+
+			boolean inputWeightPositive = weights[s] > 0;
+			int sameSignSpikes = inputWeightPositive ? positiveSpikes : negativeSpikes;
+			int differentSignSpikes = inputWeightPositive ? negativeSpikes : positiveSpikes;
+
+			if(positiveSpike) {
+				learningPowers[s] = sameSignSpikes - differentSignSpikes;
+				learningDirections[s] = sameSignSpikes;
+			}
+			else {
+				learningPowers[s] = differentSignSpikes - sameSignSpikes;
+				learningDirections[s] = -differentSignSpikes;
+			}
+		}
+
+		double minAbsWeight = Double.MAX_VALUE;
+		int minAbsWeightSynapse = -1;
+
+		for(int s = first; s < last; s++) {
+			double newWeight = weights[s] * Neuron.learningCoefficient(learningPowers[s]);
+			weights[s] = newWeight;
+
+			if(Math.abs(newWeight) < minAbsWeight) {
+				minAbsWeight = Math.abs(newWeight);
+				minAbsWeightSynapse = s;
+			}
+		}
+
+		//flip the sign of the least significant input
+		if(minAbsWeight < 0.1) {
+			weights[minAbsWeightSynapse] = -weights[minAbsWeightSynapse];
+		}
+
+		normalizeInputWeights(id);
+
+		//back propagate the learning
+		if(learnLayer < maxLearningDepth) {
+			//copy out first, a cycle could learn this neuron again and overwrite the scratch
+			int count = 0;
+			int[] sources = getLearnSources(learnLayer);
+			for(int s = first; s < last; s++) {
+				if(learningDirections[s] > 0) {
+					sources[count++] = inputSource[s];
+				}
+			}
+			for(int idx = 0; idx < count; idx++) {
+				learn(sources[idx], now, true, learnLayer+1, maxLearningDepth);
+			}
+		}
+	}
+
+	//only allocates the first time learning goes this deep
+	private int[] getLearnSources(int learnLayer) {
+		if(learnLayer >= learnSources.length) {
+			int[][] grown = Arrays.copyOf(learnSources, learnLayer + 1);
+			for(int layer = learnSources.length; layer < grown.length; layer++) {
+				grown[layer] = new int[maxNumberOfInputs];
+			}
+			learnSources = grown;
+		}
+		return learnSources[learnLayer];
+	}
+
+	public void normalizeInputWeights(int id) {
+		double absMax = 0.0;
+		for(int s = inputStart[id]; s < inputStart[id+1]; s++) {
+			absMax = Math.max(absMax, Math.abs(weights[s]));
+		}
+
+		for(int s = inputStart[id]; s < inputStart[id+1]; s++) {
+			weights[s] /= absMax;
+		}
+		potentialStale[id] = true;
+	}
+}
@@ -0,0 +1,82 @@
+package neuron;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//the decay of a spike's contribution, exp(-decayCoefficient * amountOfTimePassed)
+//
+//simulation time is an integer frame index, so the factors for whole frame deltas are precomputed
+// out to where they drop under epsilon (after that a spike is forgotten anyway, see SpikeHistory)
+// anything outside the table (negative, or further out) falls back to Math.exp
+//kernels are immutable and shared by every neuron with the same coefficient
+public class DecayKernel {
+
+	//at most this many table entries, for very slow decays
+	private static final int MAX_TABLE_LENGTH = 1 << 16;
+
+	private static final Map<Double, DecayKernel> kernels = new HashMap<Double, DecayKernel>();
+
+	private final double decayCoefficient;
+	private final double[] factors;			//factors[timePassed]
+
+	//at this time delta the decay is 0.5, learn rewards spikes within it
+	private final double recentSpikeCutoff;
+
+	private DecayKernel(double decayCoefficient, double epsilon) {
+		this.decayCoefficient = decayCoefficient;
+		this.recentSpikeCutoff = (-1.0/decayCoefficient) * Math.log(0.5);
+
+		int tableLength = (int) Math.min(MAX_TABLE_LENGTH, Math.ceil(getHorizon(epsilon)) + 1);
+		factors = new double[tableLength];
+		for(int timePassed = 0; timePassed < tableLength; timePassed++) {
+			factors[timePassed] = Math.exp(-decayCoefficient * timePassed);
+		}
+	}
+
+	public static synchronized DecayKernel of(double decayCoefficient) {
+		if(!(decayCoefficient > 0.0)) {
+			throw new RuntimeException("decay coefficient must be positive: " + decayCoefficient);
+		}
+		DecayKernel kernel = kernels.get(decayCoefficient);
+		if(kernel == null) {
+			kernel = new DecayKernel(decayCoefficient, Neuron.DEFAULT_SPIKE_HISTORY_EPSILON);
+			kernels.put(decayCoefficient, kernel);
+		}
+		return kernel;
+	}
+
+	///////////////////////////////////////////////////////
+
+	public double getDecayCoefficient() {
+		return decayCoefficient;
+	}
+
+	public double getRecentSpikeCutoff() {
+		return recentSpikeCutoff;
+	}
+
+	//time after which the decay is under epsilon
+	public double getHorizon(double epsilon) {
+		return Math.log(epsilon) / -decayCoefficient;
+	}
+
+	public int getTableLength() {
+		return factors.length;
+	}
+
+	///////////////////////////////////////////////////////
+
+	public double factor(long timePassed) {
+		if(timePassed >= 0 && timePassed < factors.length) {
+			return factors[(int) timePassed];
+		}
+		return Math.exp(-decayCoefficient * timePassed);
+	}
+
+	public double decay(double value, long timePassed) {
+		if(value == 0.0) {
+			return 0.0;
+		}
+		return value * factor(timePassed);
+	}
+}
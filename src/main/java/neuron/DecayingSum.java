@@ -0,0 +1,34 @@
+package neuron;
+
+//running sum of amplitudes that all decay by exp(-decayCoefficient * amountOfTimePassed) (see DecayKernel)
+// the sum is stored as its value at the time of the last addition, and rescaled on access
+// sum_k(a_k * exp(-d*(now-t_k))) == exp(-d*(now-T)) * sum_k(a_k * exp(-d*(T-t_k)))
+class DecayingSum {
+
+	private double value = 0.0;	//value of the sum at time
+	private long time = 0;
+
+	public double valueAt(long now, DecayKernel decay) {
+		return decay.decay(value, now-time);
+	}
+
+	public void add(long now, double amplitude, DecayKernel decay) {
+		value = valueAt(now, decay) + amplitude;
+		time = now;
+	}
+
+	//overwrite the sum, as seen at time now
+	public void set(long now, double value) {
+		this.value = value;
+		this.time = now;
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	public void clear() {
+		value = 0.0;
+		time = 0;
+	}
+}
@@ -0,0 +1,166 @@
+package neuron;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//breadth first replacement for the recursive learn fan-out of several forced neurons
+//
+//the recursive learn walks every path back through the inputs, so with a fan-in of f
+// an upstream neuron can be re-learned up to f^depth times in a frame
+//here the neurons to learn are collected per depth level instead:
+//	level 0 are the added (forced) neurons
+//	level k+1 are the inputs of level k, with the learning directions reaching them summed over all paths
+//every neuron is learned at most once per level, so a frame costs one pass over the touched synapses per level
+//
+//like the recursive learn, an input is only learned (positive) if its summed direction is > 0,
+// but a negative direction from one path now cancels a positive one from another
+//
+//batched: the weights are not changed while the wave runs
+// each learn only adds its learning powers to a per synapse buffer (Neuron.addLearningPowers),
+// and at the end every touched neuron applies the sum once (one scaling pass, one sign flip, one normalize)
+// so a neuron reached at several levels is only rescaled once, and all directions come from the weights at the start
+public class LearningWave {
+
+	private final List<Neuron> neurons;
+	private final int[][] inputIds;		//by neuron id, in the neuron's input order
+
+	private boolean batched = false;
+	private final int[] inputStart;			//CSR offsets of each neuron's synapses into learningPowers
+	private final int[] learningPowers;
+	private final BitSet touched = new BitSet();
+
+	//summed learning direction by neuron id, for the current and next level
+	private int[] directions;
+	private int[] nextDirections;
+	private BitSet level = new BitSet();
+	private BitSet nextLevel = new BitSet();
+
+	private long learnCount = 0;
+
+	public LearningWave(List<Neuron> neurons) throws IOException {
+		this.neurons = neurons;
+		int numberOfNeurons = neurons.size();
+
+		Map<Neuron, Integer> ids = new HashMap<Neuron, Integer>();
+		for(int id = 0; id < numberOfNeurons; id++) {
+			ids.put(neurons.get(id), id);
+		}
+
+		inputIds = new int[numberOfNeurons][];
+		for(int id = 0; id < numberOfNeurons; id++) {
+			Neuron n = neurons.get(id);
+			inputIds[id] = new int[n.getNumberOfInputs()];
+			for(int idx = 0; idx < inputIds[id].length; idx++) {
+				Integer inputId = ids.get(n.getInputNeuron(idx));
+				if(inputId == null) {
+					throw new IOException("input " + n.getInputNeuron(idx).getName() + " of " + n.getName() + " is not part of this network");
+				}
+				inputIds[id][idx] = inputId;
+			}
+		}
+
+		inputStart = new int[numberOfNeurons + 1];
+		for(int id = 0; id < numberOfNeurons; id++) {
+			inputStart[id+1] = inputStart[id] + inputIds[id].length;
+		}
+		learningPowers = new int[inputStart[numberOfNeurons]];
+
+		directions = new int[numberOfNeurons];
+		nextDirections = new int[numberOfNeurons];
+	}
+
+	public boolean isBatched() {
+		return batched;
+	}
+
+	public void setBatched(boolean batched) {
+		this.batched = batched;
+	}
+
+	///////////////////////////////////////////////////////
+
+	//a neuron to learn at level 0, id is its index in neurons
+	// added more than once, the directions add up and it's still learned once (opposite ones cancel, see LearningWaveTest)
+	public void add(int id, boolean positiveSpike) {
+		directions[id] += positiveSpike ? +1 : -1;
+		level.set(id);
+	}
+
+	//number of single neuron learns (Neuron.learnInputs) done so far
+	public long getLearnCount() {
+		return learnCount;
+	}
+
+	//learn everything added since the last call, and back propagate it up to maxLearningDepth
+	//learnedNeurons (if not null) collects every neuron whose input weights were changed
+	public void learn(long now, int maxLearningDepth, Collection<Neuron> learnedNeurons) {
+		for(int learnLayer = 0; !level.isEmpty(); learnLayer++) {
+			boolean propagate = learnLayer < maxLearningDepth;
+
+			//in id order, so the result doesn't depend on the order things were added
+			for(int id = level.nextSetBit(0); id >= 0; id = level.nextSetBit(id+1)) {
+				int direction = directions[id];
+				directions[id] = 0;
+
+				//forced neurons learn either way, inputs only learn from positive directions
+				boolean learns = learnLayer == 0 ? direction != 0 : direction > 0;	//TODO: higher?
+				if(!learns) {
+					continue;
+				}
+
+				Neuron n = neurons.get(id);
+				if(batched) {
+					n.addLearningPowers(now, direction > 0, learningPowers, inputStart[id]);
+					touched.set(id);
+				}
+				else {
+					n.learnInputs(now, direction > 0);
+					if(learnedNeurons != null) {
+						learnedNeurons.add(n);
+					}
+				}
+				learnCount++;
+
+				if(propagate) {
+					int[] inputs = inputIds[id];
+					for(int idx = 0; idx < inputs.length; idx++) {
+						int learningDirection = n.getLearningDirection(idx);
+						if(learningDirection != 0) {
+							nextDirections[inputs[idx]] += learningDirection;
+							nextLevel.set(inputs[idx]);
+						}
+					}
+				}
+			}
+			level.clear();
+
+			int[] swapDirections = directions;
+			directions = nextDirections;
+			nextDirections = swapDirections;
+			BitSet swapLevel = level;
+			level = nextLevel;
+			nextLevel = swapLevel;
+		}
+
+		if(batched) {
+			applyLearningPowers(learnedNeurons);
+		}
+	}
+
+	private void applyLearningPowers(Collection<Neuron> learnedNeurons) {
+		for(int id = touched.nextSetBit(0); id >= 0; id = touched.nextSetBit(id+1)) {
+			Neuron n = neurons.get(id);
+			n.applyLearningPowers(learningPowers, inputStart[id]);
+			Arrays.fill(learningPowers, inputStart[id], inputStart[id+1], 0);
+			if(learnedNeurons != null) {
+				learnedNeurons.add(n);
+			}
+		}
+		touched.clear();
+	}
+}
@@ -3,18 +3,16 @@ package neuron;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import org.apache.commons.lang3.tuple.Pair;
 
 import main.HelperFunctions;
-import main.SpikeMemory;
 
 public class Neuron {
 	
@@ -23,35 +21,81 @@ public class Neuron {
 	
 	//the rate of decay for the neuron's potential
 	// a spikes contribution is dampened by exp(-decayCoefficient * amountOfTimePassed)
-	private static final double decayCoefficient = 0.1;		//TODO: make configurable or even learnable
+	// each neuron can set its own (setDecayCoefficient), this is where they start
+	public static final double DEFAULT_DECAY_COEFFICIENT = 0.1;
 	
-	//at this time delta, with this decay, a spike will be <the value in the log> times the original size
+	//recent spike cutoff (DecayKernel.getRecentSpikeCutoff)
+	//at this time delta, with this decay, a spike will be 0.5 times the original size
 	// if a spike happened within this time range, increase the weight of the contributing neuron
 	// for those connections that didn't contribute in this time, decrease their weight contribution  
-	private static final double RECENT_SPIKE_CUTOFF = (-1.0/decayCoefficient) * Math.log(0.5);
 	
 	//the amount to increase "close" neighbor weights when co-spiking
 	//ALSO the inverse amount of the decrease
 	//TODO:
-	private static final double WEIGHT_LEARNING_COEFFICIENT = 1.1;
+	static final double WEIGHT_LEARNING_COEFFICIENT = 1.1;
+	
+	//WEIGHT_LEARNING_COEFFICIENT^learningPower, precomputed for small powers
+	// learning powers count recent spikes, so they stay well inside this
+	private static final int MAX_TABLED_LEARNING_POWER = 64;
+	private static final double[] LEARNING_COEFFICIENTS = new double[2*MAX_TABLED_LEARNING_POWER + 1];
+	static {
+		for(int power = -MAX_TABLED_LEARNING_POWER; power <= MAX_TABLED_LEARNING_POWER; power++) {
+			LEARNING_COEFFICIENTS[power + MAX_TABLED_LEARNING_POWER] = Math.pow(WEIGHT_LEARNING_COEFFICIENT, power);
+		}
+	}
+	
+	//remembered spikes are dropped once exp(-decayCoefficient * amountOfTimePassed) is under this
+	public static final double DEFAULT_SPIKE_HISTORY_EPSILON = 1e-6;
 	
 	
 	private int name;
 	private int layer;
 	
-	//time of spike and neuron (null if sensory) as well as amplitude
+	//time of spike and input index (sensory if none) as well as amplitude
 	// used to calculate potential
-	private List<SpikeMemory> inputSpikes = new ArrayList<SpikeMemory>();
+	private DecayKernel decay = DecayKernel.of(DEFAULT_DECAY_COEFFICIENT);
+	private SpikeHistory inputSpikes = new SpikeHistory(DEFAULT_SPIKE_HISTORY_EPSILON, decay);
 	
 	//threshold on the absolute value of the internal potential
 	private double threshold;
 	
 	private Pair<Double, Double> location;
 	
-	//neuron -- to --> weight
-	//TODO: make private again
-	public Map<Neuron, Double> inputs = new HashMap<Neuron, Double>();	//weight an be positive or negative 
+	//inputs are kept by index (in the order they were added)
+	// neuron -- to --> index -- to --> weight
+	//this order is also the order learn and normalizeInputWeights go through the weights, so (unlike the old HashMap order)
+	// it doesn't change from run to run, but float sums and the smallest weight tie in learn can come out differently than before
+	private Map<Neuron, Integer> inputIndexes = new HashMap<Neuron, Integer>();
+	private int numberOfInputs = 0;
+	private Neuron[] inputNeurons = new Neuron[0];
+	private double[] inputWeights = new double[0];	//weight an be positive or negative 
 	private Set<Neuron> outputs = new HashSet<Neuron>();
+	private Neuron[] outputNeurons = new Neuron[0];		//same as outputs, for spikeOut
+	
+	//incremental potential
+	// rather than rescanning inputSpikes on every getPotential, keep running decayed sums
+	// one per input (so weight changes from learn still apply to past spikes) and one for sensory input
+	//on by default, it agrees with rescanning (setIncrementalPotential(false)) to rounding, see NeuronTest
+	private boolean incrementalPotential = true;
+	private DecayingSum[] inputTraces = new DecayingSum[0];
+	private DecayingSum sensoryTrace = new DecayingSum();
+	private DecayingSum potentialTrace = new DecayingSum();		//sensory + sum(weight * input trace)
+	private boolean potentialTraceStale = false;				//set when weights change
+	
+	//per frame potential cache
+	// shouldSpike, spikeSign (from spikeOut) and paint all ask for the same frame's potential
+	// any input, weight change or clear drops it
+	private boolean potentialCaching = true;
+	private boolean potentialCached = false;
+	private long cachedPotentialTime;
+	private double cachedPotential;
+	private long potentialEvaluations = 0;
+	private long savedPotentialEvaluations = 0;
+	
+	//learn scratch, by input index
+	private int[] learningPowers = new int[0];
+	private int[] learningDirections = new int[0];
+	private boolean learning = false;		//set while learn runs (to notice a cycle back into this neuron)
 
 
 	//paint variables
@@ -109,20 +153,87 @@ public class Neuron {
 	
 	///////////////////////////////////////////////////////
 	
+	public boolean isIncrementalPotential() {
+		return this.incrementalPotential;
+	}
+	
+	//false falls back to rescanning every remembered spike
+	public void setIncrementalPotential(boolean incrementalPotential) {
+		this.incrementalPotential = incrementalPotential;
+		potentialCached = false;
+	}
+	
+	public boolean isPotentialCaching() {
+		return this.potentialCaching;
+	}
+	
+	//false computes the potential on every getPotential
+	public void setPotentialCaching(boolean potentialCaching) {
+		this.potentialCaching = potentialCaching;
+		potentialCached = false;
+	}
+	
 	public double getPotential(long now) {
+		if(potentialCaching && potentialCached && cachedPotentialTime == now) {
+			savedPotentialEvaluations++;
+			return cachedPotential;
+		}
+		
+		potentialEvaluations++;
+		cachedPotential = incrementalPotential ? getIncrementalPotential(now) : getScannedPotential(now);
+		cachedPotentialTime = now;
+		potentialCached = true;
+		return cachedPotential;
+	}
+	
+	private void weightsChanged() {
+		potentialTraceStale = true;
+		potentialCached = false;
+	}
+	
+	//number of times getPotential actually computed the potential
+	public long getPotentialEvaluations() {
+		return potentialEvaluations;
+	}
+	
+	//number of times getPotential was answered from the per frame cache
+	public long getSavedPotentialEvaluations() {
+		return savedPotentialEvaluations;
+	}
+	
+	public void resetPotentialEvaluationCounts() {
+		potentialEvaluations = 0;
+		savedPotentialEvaluations = 0;
+	}
+	
+	private double getIncrementalPotential(long now) {
+		if(potentialTraceStale) {
+			//weights changed, rebuild the weighted sum at the time of the last input
+			long traceTime = potentialTrace.getTime();
+			double potential = sensoryTrace.valueAt(traceTime, decay);
+			for(int idx = 0; idx < numberOfInputs; idx++) {
+				potential += inputWeights[idx] * inputTraces[idx].valueAt(traceTime, decay);
+			}
+			potentialTrace.set(traceTime, potential);
+			potentialTraceStale = false;
+		}
+		return potentialTrace.valueAt(now, decay);
+	}
+	
+	public double getScannedPotential(long now) {
 		double potential = 0.0;
-		for(SpikeMemory sm : inputSpikes) {
-			long timeOfSpike = sm.time;
+		for(int idx = 0; idx < inputSpikes.size(); idx++) {
+			long timeOfSpike = inputSpikes.getTime(idx);
 			double spikeAmplitude = 0.0;
 			
-			if(sm.isSensory) {
-				spikeAmplitude = sm.sensoryAmplitude * sm.sign;
+			if(inputSpikes.isSensory(idx)) {
+				spikeAmplitude = inputSpikes.getAmplitude(idx) * inputSpikes.getSign(idx);
 			}
 			else {
-				spikeAmplitude = inputs.get(sm.neuron) * sm.sign;
+				spikeAmplitude = inputWeights[inputSpikes.getSource(idx)] * inputSpikes.getSign(idx);
 			}
 			
-			potential += spikeAmplitude * Math.exp(-decayCoefficient * (now-timeOfSpike));
+			potential += spikeAmplitude * decay.factor(now-timeOfSpike);
 		}
 		//System.out.println(now + " " + this.getName() + " " + potential);
 		return potential;
@@ -130,40 +241,145 @@ public class Neuron {
 	
 	///////////////////////////////////////////////////////
 	
+	public double getDecayCoefficient() {
+		return decay.getDecayCoefficient();
+	}
+	
+	public DecayKernel getDecayKernel() {
+		return decay;
+	}
+	
+	//per neuron (or learned) decay
+	// the running sums are rebuilt from the remembered spikes, as if this had always been the decay
+	public void setDecayCoefficient(double decayCoefficient) {
+		decay = DecayKernel.of(decayCoefficient);
+		inputSpikes.setDecayKernel(decay);
+		
+		sensoryTrace.clear();
+		for(int idx = 0; idx < numberOfInputs; idx++) {
+			inputTraces[idx].clear();
+		}
+		potentialTrace.clear();
+		for(int idx = 0; idx < inputSpikes.size(); idx++) {
+			long time = inputSpikes.getTime(idx);
+			if(inputSpikes.isSensory(idx)) {
+				sensoryTrace.add(time, inputSpikes.getAmplitude(idx) * inputSpikes.getSign(idx), decay);
+			}
+			else {
+				inputTraces[inputSpikes.getSource(idx)].add(time, inputSpikes.getSign(idx), decay);
+			}
+			potentialTrace.set(time, 0.0);
+		}
+		weightsChanged();		//rebuilds potentialTrace from the sums
+	}
+	
+	//0 remembers every spike until the next spike out / clear
+	public void setSpikeHistoryEpsilon(double epsilon) {
+		inputSpikes.setEpsilon(epsilon);
+	}
+	
+	public int getSpikeHistorySize() {
+		return inputSpikes.size();
+	}
+	
+	///////////////////////////////////////////////////////
+	
 	public void addInputNeuron(Neuron input, double inputWeight) throws IOException {
 		if(input == this) {
 			throw new IOException("NO SELF LOOPS ALLOWED");
 		}
-		inputs.put(input, inputWeight);
+		Integer index = inputIndexes.get(input);
+		if(index != null) {
+			inputWeights[index] = inputWeight;
+			weightsChanged();
+			return;
+		}
+		
+		if(numberOfInputs == inputNeurons.length) {
+			int capacity = Math.max(4, 2 * numberOfInputs);
+			inputNeurons = Arrays.copyOf(inputNeurons, capacity);
+			inputWeights = Arrays.copyOf(inputWeights, capacity);
+			inputTraces = Arrays.copyOf(inputTraces, capacity);
+			learningPowers = new int[capacity];
+			learningDirections = new int[capacity];
+		}
+		
+		inputIndexes.put(input, numberOfInputs);
+		inputNeurons[numberOfInputs] = input;
+		inputWeights[numberOfInputs] = inputWeight;
+		inputTraces[numberOfInputs] = new DecayingSum();
+		numberOfInputs++;
+		weightsChanged();
+	}
+	
+	public int getNumberOfInputs() {
+		return numberOfInputs;
+	}
+	
+	public Neuron getInputNeuron(int index) {
+		return inputNeurons[index];
+	}
+	
+	public double getInputWeight(int index) {
+		return inputWeights[index];
+	}
+	
+	//copy the weights, in input order, into[offset..offset+numberOfInputs)
+	public void getInputWeights(double[] into, int offset) {
+		System.arraycopy(inputWeights, 0, into, offset, numberOfInputs);
+	}
+	
+	//null if not an input
+	public Double getInputWeight(Neuron input) {
+		Integer index = inputIndexes.get(input);
+		return index == null ? null : inputWeights[index];
+	}
+	
+	public boolean hasInput(Neuron input) {
+		return inputIndexes.containsKey(input);
+	}
+	
+	//for weight changes made outside of learn
+	public void setInputWeight(Neuron input, double inputWeight) {
+		inputWeights[inputIndexes.get(input)] = inputWeight;
+		weightsChanged();
+	}
+	
+	public Set<Neuron> getOutputs() {
+		return outputs;
 	}
 	
 	public void addOutputNeuron(Neuron out) throws IOException {
 		if(out == this) {
 			throw new IOException("NO SELF LOOPS ALLOWED");
 		}
-		outputs.add(out);
+		if(outputs.add(out)) {
+			outputNeurons = Arrays.copyOf(outputNeurons, outputNeurons.length + 1);
+			outputNeurons[outputNeurons.length - 1] = out;
+		}
 	}
 	
 	//TODO: right?
 	public void normalizeInputWeights() {
 		/*double avg = 0.0;
-		for(double d : inputs.values()) {
-			avg += Math.abs(d);
+		for(int idx = 0; idx < numberOfInputs; idx++) {
+			avg += Math.abs(inputWeights[idx]);
 		}
-		avg /= inputs.size();
+		avg /= numberOfInputs;
 		
-		for(Entry<Neuron, Double> e : inputs.entrySet()) {
-			inputs.put(e.getKey(), e.getValue() - avg);
+		for(int idx = 0; idx < numberOfInputs; idx++) {
+			inputWeights[idx] -= avg;
 		}*/
 		
 		double absMax = 0.0;
-		for(double d : inputs.values()) {
-			absMax = Math.max(absMax, Math.abs(d));
+		for(int idx = 0; idx < numberOfInputs; idx++) {
+			absMax = Math.max(absMax, Math.abs(inputWeights[idx]));
 		}
 		
-		for(Entry<Neuron, Double> e : inputs.entrySet()) {
-			inputs.put(e.getKey(), e.getValue() / absMax);
+		for(int idx = 0; idx < numberOfInputs; idx++) {
+			inputWeights[idx] /= absMax;
 		}
+		weightsChanged();
 	}
 	
 	///////////////////////////////////////////////////////
@@ -171,14 +387,24 @@ public class Neuron {
 	//sensory input
 	public void addSensoryInput(long now, double sensoryAmplitude, boolean isPositive) {
 		//System.out.println(this.getName() + " - SENSORY OF " + sensoryAmplitude);
-		inputSpikes.add(new SpikeMemory(now, sensoryAmplitude, isPositive));
+		inputSpikes.addSensory(now, sensoryAmplitude, isPositive);
+		potentialCached = false;
 		
+		double spikeAmplitude = isPositive ? sensoryAmplitude : -sensoryAmplitude;
+		sensoryTrace.add(now, spikeAmplitude, decay);
+		potentialTrace.add(now, spikeAmplitude, decay);
 	}
 	
 	//neuron input
 	public void receiveSpike(long now, Neuron spikingNeuron, boolean isPositive) {
 		//System.out.println(this.getName() + " - SPIKE FROM " + spikingNeuron.getName());
-		inputSpikes.add(new SpikeMemory(now, spikingNeuron, isPositive));
+		int index = inputIndexes.get(spikingNeuron);
+		inputSpikes.addSpike(now, index, isPositive);
+		potentialCached = false;
+		
+		double sign = isPositive ? +1.0 : -1.0;
+		inputTraces[index].add(now, sign, decay);
+		potentialTrace.add(now, inputWeights[index] * sign, decay);
 	}
 	
 	///////////////////////////////////////////////////////
@@ -217,14 +443,86 @@ public class Neuron {
 	//		recently spiked positive AND have positive associated weights
 	//		recently spiked negative AND have negative associated weights
 	public void learn(long now, boolean positiveSpike, int learnLayer, int maxLearningDepth) {
+		learn(now, positiveSpike, learnLayer, maxLearningDepth, null);
+	}
+	
+	//learnedNeurons (if not null) collects every neuron whose input weights were changed
+	public void learn(long now, boolean positiveSpike, int learnLayer, int maxLearningDepth, Collection<Neuron> learnedNeurons) {
+		if(learnedNeurons != null) {
+			learnedNeurons.add(this);
+		}
+		
 		//System.out.println("\t LEARN " + this.getName() + " " + this.getLayer() + " **********************");
 		//note: positiveSpike should be (spikeSign > 0) if this is learning naturally
 		// otherwise, if forced learning, it would need to be set 
 		
-		//for(Neuron neighbor : inputs.keySet()) {
-		//	System.out.println("\tOLD WEIGHT " + neighbor.getName() + " " + inputs.get(neighbor));
+		//for(int idx = 0; idx < numberOfInputs; idx++) {
+		//	System.out.println("\tOLD WEIGHT " + inputNeurons[idx].getName() + " " + inputWeights[idx]);
 		//}
 		
+		//a cycle can bring learn back here while the directions below are still needed
+		boolean reentered = learning;
+		learning = true;
+		
+		//+1 for positive spikes
+		//-1 for negative spikes
+		int[] learningDirections = reentered ? new int[numberOfInputs] : this.learningDirections;
+		
+		learnInputs(now, positiveSpike, learningDirections);
+		
+		//TODO:  back propagate the learning
+		//this should be done last because of cycles/loops
+		if(learnLayer < maxLearningDepth) {
+			for(int idx = 0; idx < numberOfInputs; idx++) {
+				int learningDirection = learningDirections[idx];
+				if(learningDirection > 0) {	//TODO: higher?
+					//System.out.println("\t\tlearning direction: " + learningDirection);
+					Neuron input = inputNeurons[idx];
+					input.learn(now, learningDirection>0, learnLayer+1, maxLearningDepth, learnedNeurons);
+				}
+			}
+		}
+		
+		learning = reentered;
+		
+		//for(int idx = 0; idx < numberOfInputs; idx++) {
+		//	System.out.println("\tNEW WEIGHT " + inputNeurons[idx].getName() + " " + inputWeights[idx]);
+		//}
+	}
+	
+	//learn for this neuron only, without propagating to its inputs
+	// afterwards getLearningDirection says how each input should learn (see LearningWave)
+	public void learnInputs(long now, boolean positiveSpike) {
+		learnInputs(now, positiveSpike, this.learningDirections);
+	}
+	
+	public int getLearningDirection(int index) {
+		return learningDirections[index];
+	}
+	
+	private void learnInputs(long now, boolean positiveSpike, int[] learningDirections) {
+		for(int idx = 0; idx < numberOfInputs; idx++) {
+			learningPowers[idx] = 0;
+		}
+		addLearningPowers(now, positiveSpike, learningPowers, 0, learningDirections);
+		applyLearningPowers(learningPowers, 0);
+	}
+	
+	static double learningCoefficient(int learningPower) {
+		if(learningPower >= -MAX_TABLED_LEARNING_POWER && learningPower <= MAX_TABLED_LEARNING_POWER) {
+			return LEARNING_COEFFICIENTS[learningPower + MAX_TABLED_LEARNING_POWER];
+		}
+		return Math.pow(WEIGHT_LEARNING_COEFFICIENT, learningPower);
+	}
+	
+	//the first half of learnInputs, without changing any weight
+	// the learning power of input idx is added to learningPowers[offset + idx], so a batch can collect several learns
+	// afterwards getLearningDirection says how each input should learn
+	public void addLearningPowers(long now, boolean positiveSpike, int[] learningPowers, int offset) {
+		addLearningPowers(now, positiveSpike, learningPowers, offset, this.learningDirections);
+	}
+	
+	private void addLearningPowers(long now, boolean positiveSpike, int[] learningPowers, int offset, int[] learningDirections) {
 		//TODO: ???
 		//if not touched by the above conditions, and low weight (diven down from past runs)
 		//	switch sign of the input
@@ -234,116 +532,93 @@ public class Neuron {
 		//add one for each time that input was helpful
 		//sub one for each time that input was harmful
 		//large positive numbers mean the input helped a lot (with either pos or neg spikes)... and should be told that
-		Map<Neuron, Integer> learningPowers = new HashMap<Neuron, Integer>();
-		
-		//+1 for positive spikes
-		//-1 for negative spikes
-		Map<Neuron, Integer> learningDirections = new HashMap<Neuron, Integer>();
 		//TODO: redundant?
 		
-		for(Neuron n : inputs.keySet()) {
-			learningPowers.put(n, 0);
-			learningDirections.put(n, 0);
+		for(int idx = 0; idx < numberOfInputs; idx++) {
+			learningDirections[idx] = 0;
 		}
 		
-		for(SpikeMemory sm : inputSpikes) {
-			if(sm.isSensory) {
+		for(int idx = 0; idx < inputSpikes.size(); idx++) {
+			if(inputSpikes.isSensory(idx)) {
 				continue;		//can't reward sensory input (directly)
 			}
 			
-			long timeDelta = now - sm.time;
-			boolean isRecent = timeDelta < Neuron.RECENT_SPIKE_CUTOFF;	//TODO: make flexible function of time passed
+			long timeDelta = now - inputSpikes.getTime(idx);
+			boolean isRecent = timeDelta < decay.getRecentSpikeCutoff();	//TODO: make flexible function of time passed
 			
 			//intentionally spelled out rather than shortcut the logic
 			if(isRecent) {
-				//System.out.println("spike memory: " + sm.neuron.getName());
-				boolean inputPositiveSpike = sm.isPositive;	//was the input spike positive?
-				boolean inputWeightPositive = inputs.get(sm.neuron) > 0;
+				int input = inputSpikes.getSource(idx);
+				boolean inputPositiveSpike = inputSpikes.isPositive(idx);	//was the input spike positive?
+				boolean inputWeightPositive = inputWeights[input] > 0;
 				
 				if(positiveSpike) {
 					//spike and weight are the same sign -> product is positive -> helped positive spike
 					if(inputPositiveSpike == inputWeightPositive) {
-						//helpfulNeurons.add(sm.neuron);
-						learningPowers.put(sm.neuron, learningPowers.get(sm.neuron) + 1);
-						learningDirections.put(sm.neuron, learningDirections.get(sm.neuron) + 1);
+						learningPowers[offset + input]++;
+						learningDirections[input]++;
 					}
 					
 					//spike and weight are the different sign -> product is negative -> harmed positive spike
 					else {
-						//harmfulNeurons.add(sm.neuron);
-						learningPowers.put(sm.neuron, learningPowers.get(sm.neuron) - 1);
+						learningPowers[offset + input]--;
 					}
 				}
 				
 				else {	//negative spike
 					//spike and weight are the different sign -> product is negative -> helped negative spike
 					if(inputPositiveSpike != inputWeightPositive) {
-						//helpfulNeurons.add(sm.neuron);
-						learningPowers.put(sm.neuron, learningPowers.get(sm.neuron) + 1);
-						learningDirections.put(sm.neuron, learningDirections.get(sm.neuron) - 1);
+						learningPowers[offset + input]++;
+						learningDirections[input]--;
 					}
 					
 					//spike and weight are the same sign -> product is positive -> harmed negative spike
 					else {
-						//harmfulNeurons.add(sm.neuron);
-						learningPowers.put(sm.neuron, learningPowers.get(sm.neuron) - 1);
+						learningPowers[offset + input]--;
 					}
 				}
 			}//END recent
 		}//end for each of the remembered spikes
-		
+	}
+	
+	//the second half of learnInputs: scale each input weight by WEIGHT_LEARNING_COEFFICIENT^learningPowers[offset + idx],
+	// flip the least significant input and normalize
+	public void applyLearningPowers(int[] learningPowers, int offset) {
 		double minAbsWeight = Double.MAX_VALUE;
-		Neuron minAbsWeightNeuron = null;
+		int minAbsWeightInput = -1;
 		
-		for(Entry<Neuron, Integer> e : learningPowers.entrySet()) {
-			Neuron n = e.getKey();
-			int learningPower = e.getValue();
+		for(int idx = 0; idx < numberOfInputs; idx++) {
+			int learningPower = learningPowers[offset + idx];
 			//if(learningPower == 0) {
 			//	continue;
 			//}
 			
-			double oldWeight = inputs.get(n);
-			double learningCoefficient = Math.pow(Neuron.WEIGHT_LEARNING_COEFFICIENT, learningPower);
+			double oldWeight = inputWeights[idx];
+			double learningCoefficient = learningCoefficient(learningPower);
 			double newWeight = oldWeight * learningCoefficient;
-			inputs.put(n, newWeight);
-			//System.out.println("learn: " + n.getName() + " -> " + oldWeight + " " + learningCoefficient + " " + newWeight);
+			inputWeights[idx] = newWeight;
+			//System.out.println("learn: " + inputNeurons[idx].getName() + " -> " + oldWeight + " " + learningCoefficient + " " + newWeight);
 			
 			if(Math.abs(newWeight) < minAbsWeight) {
 				minAbsWeight = Math.abs(newWeight);
-				minAbsWeightNeuron = n;
+				minAbsWeightInput = idx;
 			}
 		}
 		
 		//TODO: track some of these... does this help? Does a wait period need to be added to prevent multiple flips
 		//flip the sign of the least significant input, in hopes that it will make it better on the othe side
 		if(minAbsWeight < 0.1) {	//has to be small
-			double origSmallWeight = inputs.get(minAbsWeightNeuron);
-			inputs.put(minAbsWeightNeuron, -1 * origSmallWeight);
+			double origSmallWeight = inputWeights[minAbsWeightInput];
+			inputWeights[minAbsWeightInput] = -1 * origSmallWeight;
+			weightsChanged();
 			//System.out.println("\t\tmin weight: " + origSmallWeight);
 		}
 		
-		//for(Neuron neighbor : inputs.keySet()) {
-		//	System.out.println("\tNEW WEIGHT (before norm)" + neighbor.getName() + " " + inputs.get(neighbor));
+		//for(int idx = 0; idx < numberOfInputs; idx++) {
+		//	System.out.println("\tNEW WEIGHT (before norm)" + inputNeurons[idx].getName() + " " + inputWeights[idx]);
 		//}
 		
 		this.normalizeInputWeights();
-		
-		//TODO:  back propagate the learning
-		//this should be done last because of cycles/loops
-		if(learnLayer < maxLearningDepth) {
-			for(Entry<Neuron, Integer> e : learningDirections.entrySet()) {
-				int learningDirection = e.getValue();
-				if(e.getValue() > 0) {	//TODO: higher?
-					//System.out.println("\t\tlearning direction: " + learningDirection);
-					Neuron input = e.getKey();
-					input.learn(now, learningDirection>0, learnLayer+1, maxLearningDepth);
-				}
-			}
-		}
-		
-		//for(Neuron neighbor : inputs.keySet()) {
-		//	System.out.println("\tNEW WEIGHT " + neighbor.getName() + " " + inputs.get(neighbor));
-		//}
 	}
 	
 	
@@ -353,7 +628,7 @@ public class Neuron {
 		boolean isPositive = this.spikeSign(now) > 0;	//should be -1 or +1...NOT zero
 		
 		//send out spikes to neighbors
-		for(Neuron neighbor : outputs) {
+		for(Neuron neighbor : outputNeurons) {
 			neighbor.receiveSpike(now, this, isPositive);
 		}
 		
@@ -363,6 +638,14 @@ public class Neuron {
 	
 	public void clearInputSpikes() {
 		inputSpikes.clear();
+		
+		for(int idx = 0; idx < numberOfInputs; idx++) {
+			inputTraces[idx].clear();
+		}
+		sensoryTrace.clear();
+		potentialTrace.clear();
+		potentialTraceStale = false;
+		potentialCached = false;
 	}
 	
 	///////////////////////////////////////////////////////
@@ -374,10 +657,15 @@ public class Neuron {
 	}
 	
 	public void paint(long now, Graphics2D g) {
+		paint(g, this.getPotential(now), inputWeights, 0);
+	}
+	
+	//paint a given state rather than the current one, e.g. a snapshot taken while the network kept running (see main.RenderPipeline)
+	// weights[offset + idx] is the weight of input idx
+	public void paint(Graphics2D g, double currentPotential, double[] weights, int offset) {
 		Color oc = g.getColor();
 		
 		//body
-		double currentPotential = this.getPotential(now);
 		boolean isPositive = currentPotential > 0.0;
 		double potentialRatio = Math.abs(currentPotential / this.threshold);
 		potentialRatio = Math.min(potentialRatio, 1.0);	//potential may be really high for a short time
@@ -398,10 +686,9 @@ public class Neuron {
 		
 		//sensory indicator
 		/*boolean recentlyHadSensoryInput = false;
-		for(SpikeMemory sm : inputSpikes) {
-			long timeOfSpike = sm.time;
-			Neuron n = sm.neuron;
-			if(n == null && (now - timeOfSpike) < RECENT_SPIKE_CUTOFF) {	//if sensory AND recent
+		for(int idx = 0; idx < inputSpikes.size(); idx++) {
+			long timeOfSpike = inputSpikes.getTime(idx);
+			if(inputSpikes.isSensory(idx) && (now - timeOfSpike) < decay.getRecentSpikeCutoff()) {	//if sensory AND recent
 				recentlyHadSensoryInput = true;
 			}
 		}
@@ -425,12 +712,13 @@ public class Neuron {
 		
 		//input dendrites
 		double maxAbsWeight = 0.0;
-		for(Neuron n : inputs.keySet()) {
-			maxAbsWeight = Math.max(maxAbsWeight, Math.abs(inputs.get(n)));
+		for(int idx = 0; idx < numberOfInputs; idx++) {
+			maxAbsWeight = Math.max(maxAbsWeight, Math.abs(weights[offset + idx]));
 		}
 		
-		for(Neuron n : inputs.keySet()) {
-			double currentWeight = inputs.get(n);
+		for(int idx = 0; idx < numberOfInputs; idx++) {
+			Neuron n = inputNeurons[idx];
+			double currentWeight = weights[offset + idx];
 			boolean positiveWeight = currentWeight > 0;
 			double weightRatio = Math.abs(currentWeight / maxAbsWeight);
 			
@@ -0,0 +1,333 @@
+package neuron;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//two phase frame step (decide who spikes, then spike out) spread over a fork-join pool
+//
+//decide: shouldSpike only touches the neuron's own state, so partitions of neurons run in parallel
+//
+//spike out: the serial loop is
+//	for(Neuron n : spikeNeurons) n.spikeOut(now);
+// where a neuron's spikeSign can already include spikes from neurons earlier in the list,
+// and anything it received before its own spikeOut is cleared
+//to get the same result without a lock, every spike is buffered per target (in spike order)
+// and each target is only ever touched by one worker:
+//	wave by wave, spiking neurons replay the spikes from earlier neurons, take their sign and clear
+//	(a neuron's wave is one more than the latest wave of an earlier spiking input)
+//	then every target replays what's left of its buffer
+//each target sees the same receiveSpike/clear sequence as the serial loop, so the output is identical
+//
+//a step runs its phases on a fixed set of chunk tasks, made once and reused, so stepping doesn't allocate
+public class ParallelFrameStep {
+
+	//don't split a phase into chunks smaller than this (a phase no bigger runs on the calling thread)
+	private static final int MIN_PARTITION_SIZE = 16;
+	//chunks per pool thread, so a slow chunk doesn't hold up the others
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	//what a phase runs over its ids (neuron ids, or indexes into waveMembers)
+	private static final int DECIDE = 0;
+	private static final int WAVE = 1;
+	private static final int DELIVER = 2;
+
+	private final List<Neuron> neurons;
+	private final int numberOfNeurons;
+	private final int[][] outputIds;
+	private final ForkJoinPool pool;
+
+	//per frame, by neuron id
+	private final boolean[] spikeFlags;
+	private final int[] spikeRanks;			//index into spikeIds, -1 if not spiking out
+
+	//per frame, by spike rank
+	private final int[] spikeIds;
+	private final int[] spikeWaves;
+	private final boolean[] spikePositive;
+
+	//spikers by wave: wave w is waveMembers[waveStart[w], waveStart[w+1]) (at most one wave per spiker)
+	private final int[] waveStart;
+	private final int[] waveFill;
+	private final int[] waveMembers;
+
+	//incoming spike buffers, CSR by target, holding source spike ranks in increasing order
+	private final int[] incomingStart;
+	private final int[] incomingFill;
+	private int[] incoming = new int[0];
+	private final int[] replayed;			//how much of a target's buffer was replayed before it spiked out
+
+	//the phase being run, [phaseFrom, phaseTo) split over the first activeChunks chunks
+	private final Chunk[] chunks;
+	private final PhaseTask phaseTask = new PhaseTask();
+	private int phase;
+	private int phaseFrom;
+	private int phaseTo;
+	private long phaseNow;
+	private int activeChunks;
+
+	public ParallelFrameStep(List<Neuron> neurons, ForkJoinPool pool) throws IOException {
+		this.neurons = neurons;
+		this.numberOfNeurons = neurons.size();
+		this.pool = pool;
+
+		Map<Neuron, Integer> ids = new HashMap<Neuron, Integer>();
+		for(int id = 0; id < numberOfNeurons; id++) {
+			ids.put(neurons.get(id), id);
+		}
+
+		outputIds = new int[numberOfNeurons][];
+		for(int id = 0; id < numberOfNeurons; id++) {
+			Neuron n = neurons.get(id);
+			outputIds[id] = new int[n.getOutputs().size()];
+			int o = 0;
+			for(Neuron out : n.getOutputs()) {
+				Integer outId = ids.get(out);
+				if(outId == null) {
+					throw new IOException("output " + out.getName() + " of " + n.getName() + " is not part of this network");
+				}
+				outputIds[id][o++] = outId;
+			}
+		}
+
+		spikeFlags = new boolean[numberOfNeurons];
+		spikeRanks = new int[numberOfNeurons];
+		Arrays.fill(spikeRanks, -1);
+		spikeIds = new int[numberOfNeurons];
+		spikeWaves = new int[numberOfNeurons];
+		spikePositive = new boolean[numberOfNeurons];
+
+		waveStart = new int[numberOfNeurons + 1];
+		waveFill = new int[numberOfNeurons];
+		waveMembers = new int[numberOfNeurons];
+
+		incomingStart = new int[numberOfNeurons + 1];
+		incomingFill = new int[numberOfNeurons];
+		replayed = new int[numberOfNeurons];
+
+		chunks = new Chunk[pool.getParallelism() * CHUNKS_PER_THREAD];
+		for(int c = 0; c < chunks.length; c++) {
+			chunks[c] = new Chunk(c);
+		}
+	}
+
+	public ParallelFrameStep(List<Neuron> neurons, int numberOfThreads) throws IOException {
+		this(neurons, new ForkJoinPool(numberOfThreads));
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	///////////////////////////////////////////////////////
+
+	//runs the phase over [from, to), on the pool if it's worth splitting
+	private void runPhase(int phase, int from, int to, long now) {
+		if(to - from <= MIN_PARTITION_SIZE) {
+			run(phase, from, to, now);
+			return;
+		}
+		this.phase = phase;
+		this.phaseFrom = from;
+		this.phaseTo = to;
+		this.phaseNow = now;
+		this.activeChunks = Math.min(chunks.length, (to - from + MIN_PARTITION_SIZE - 1) / MIN_PARTITION_SIZE);
+		phaseTask.reinitialize();
+		pool.invoke(phaseTask);
+	}
+
+	//forks the active chunks and waits for them
+	private class PhaseTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void compute() {
+			for(int c = 0; c < activeChunks; c++) {
+				chunks[c].reinitialize();
+			}
+			for(int c = 1; c < activeChunks; c++) {
+				chunks[c].fork();
+			}
+			chunks[0].invoke();
+			for(int c = 1; c < activeChunks; c++) {
+				chunks[c].join();
+			}
+		}
+	}
+
+	//the c-th of activeChunks even parts of the phase
+	private class Chunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int c;
+
+		Chunk(int c) {
+			this.c = c;
+		}
+
+		@Override
+		protected void compute() {
+			int size = phaseTo - phaseFrom;
+			int from = phaseFrom + (int)((long) size * c / activeChunks);
+			int to = phaseFrom + (int)((long) size * (c+1) / activeChunks);
+			run(phase, from, to, phaseNow);
+		}
+	}
+
+	private void run(int phase, int from, int to, long now) {
+		switch(phase) {
+		case DECIDE:
+			decide(from, to, now);
+			break;
+		case WAVE:
+			spikeOutWave(from, to, now);
+			break;
+		case DELIVER:
+			deliver(from, to, now);
+			break;
+		default:
+			throw new RuntimeException("unknown phase " + phase);
+		}
+	}
+
+	///////////////////////////////////////////////////////
+
+	//which should spike this frame, as ids (list indexes) in increasing order, into spikingIds (at least neurons.size() long), returns how many
+	public int findSpikingNeurons(long now, int[] spikingIds) {
+		runPhase(DECIDE, 0, numberOfNeurons, now);
+
+		int spikeCount = 0;
+		for(int id = 0; id < numberOfNeurons; id++) {
+			if(spikeFlags[id]) {
+				spikingIds[spikeCount++] = id;
+			}
+		}
+		return spikeCount;
+	}
+
+	//same as calling spikeOut(now) on the neurons spikingIds[0, spikeCount), in order, which must be increasing
+	public void spikeOut(int[] spikingIds, int spikeCount, long now) {
+		int lastId = -1;
+		for(int idx = 0; idx < spikeCount; idx++) {
+			int id = spikingIds[idx];
+			if(id <= lastId || id >= numberOfNeurons) {
+				throw new RuntimeException("spiking ids must be part of this network and in increasing order");
+			}
+			spikeIds[idx] = id;
+			lastId = id;
+		}
+		spikeOutRanked(spikeCount, now);
+	}
+
+	//spikeIds[0, spikeCount) spike out, in that order
+	private void spikeOutRanked(int spikeCount, long now) {
+		if(spikeCount == 0) {
+			return;
+		}
+
+		//ranks and waves
+		for(int rank = 0; rank < spikeCount; rank++) {
+			spikeRanks[spikeIds[rank]] = rank;
+			spikeWaves[rank] = 0;
+		}
+
+		int numberOfWaves = 1;
+		Arrays.fill(incomingFill, 0);
+		for(int rank = 0; rank < spikeCount; rank++) {
+			for(int target : outputIds[spikeIds[rank]]) {
+				incomingFill[target]++;
+				int targetRank = spikeRanks[target];
+				if(targetRank > rank) {
+					spikeWaves[targetRank] = Math.max(spikeWaves[targetRank], spikeWaves[rank] + 1);
+					numberOfWaves = Math.max(numberOfWaves, spikeWaves[targetRank] + 1);
+				}
+			}
+		}
+
+		//incoming buffers, filled in rank order so each target's buffer is sorted
+		for(int id = 0; id < numberOfNeurons; id++) {
+			incomingStart[id+1] = incomingStart[id] + incomingFill[id];
+			incomingFill[id] = incomingStart[id];
+		}
+		if(incoming.length < incomingStart[numberOfNeurons]) {
+			incoming = new int[incomingStart[numberOfNeurons]];		//only grows while the spike count finds new highs
+		}
+		for(int rank = 0; rank < spikeCount; rank++) {
+			for(int target : outputIds[spikeIds[rank]]) {
+				incoming[incomingFill[target]++] = rank;
+			}
+		}
+
+		//spikers, by wave
+		Arrays.fill(waveStart, 0, numberOfWaves + 1, 0);
+		for(int rank = 0; rank < spikeCount; rank++) {
+			waveStart[spikeWaves[rank] + 1]++;
+		}
+		for(int wave = 0; wave < numberOfWaves; wave++) {
+			waveStart[wave+1] += waveStart[wave];
+		}
+		System.arraycopy(waveStart, 0, waveFill, 0, numberOfWaves);
+		for(int rank = 0; rank < spikeCount; rank++) {
+			waveMembers[waveFill[spikeWaves[rank]]++] = rank;
+		}
+
+		//each spiking neuron: replay what came from earlier spikes, take the sign, reset
+		for(int wave = 0; wave < numberOfWaves; wave++) {
+			runPhase(WAVE, waveStart[wave], waveStart[wave+1], now);
+		}
+
+		//every target: replay the rest of the buffer
+		runPhase(DELIVER, 0, numberOfNeurons, now);
+
+		for(int rank = 0; rank < spikeCount; rank++) {
+			spikeRanks[spikeIds[rank]] = -1;
+		}
+	}
+
+	private void replay(int target, int from, int to, long now) {
+		Neuron n = neurons.get(target);
+		for(int idx = from; idx < to; idx++) {
+			int sourceRank = incoming[idx];
+			n.receiveSpike(now, neurons.get(spikeIds[sourceRank]), spikePositive[sourceRank]);
+		}
+	}
+
+	//neuron ids [from, to)
+	private void decide(int from, int to, long now) {
+		for(int id = from; id < to; id++) {
+			spikeFlags[id] = neurons.get(id).shouldSpike(now);
+		}
+	}
+
+	//waveMembers[from, to)
+	private void spikeOutWave(int from, int to, long now) {
+		for(int idx = from; idx < to; idx++) {
+			int rank = waveMembers[idx];
+			int id = spikeIds[rank];
+
+			//buffers are sorted by rank, so the earlier spikes are a prefix
+			int end = incomingStart[id];
+			while(end < incomingStart[id+1] && incoming[end] < rank) {
+				end++;
+			}
+			replay(id, incomingStart[id], end, now);
+			replayed[id] = end;
+
+			Neuron n = neurons.get(id);
+			spikePositive[rank] = n.spikeSign(now) > 0;	//should be -1 or +1...NOT zero
+			n.clearInputSpikes();		//like reseting the potential
+		}
+	}
+
+	//neuron ids [from, to)
+	private void deliver(int from, int to, long now) {
+		for(int id = from; id < to; id++) {
+			int start = spikeRanks[id] >= 0 ? replayed[id] : incomingStart[id];
+			replay(id, start, incomingStart[id+1], now);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package neuron;
+
+//remembered input spikes of a neuron, oldest first, in a ring buffer
+// stored as packed primitive columns so remembering a spike allocates nothing
+//	time
+//	source: index of the input neuron (see Neuron.getInputNeuron), SENSORY for sensory input
+//	amplitude: sensory amplitude (neuron spikes use the current input weight instead)
+//	sign
+//
+//a spike's contribution to the potential is amplitude * exp(-decayCoefficient * age)
+// once that factor is under epsilon the spike is dropped (but never before the recent spike cutoff, learn needs those)
+//spikes must be added in time order, so the old ones are always at the head
+//the buffer only grows to the number of spikes that fit inside that horizon, so memory stays flat on long runs
+class SpikeHistory {
+
+	public static final int SENSORY = -1;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] times = new long[INITIAL_CAPACITY];
+	private int[] sources = new int[INITIAL_CAPACITY];
+	private double[] amplitudes = new double[INITIAL_CAPACITY];
+	private boolean[] positives = new boolean[INITIAL_CAPACITY];
+
+	private int head = 0;		//oldest
+	private int size = 0;
+	private int mask = INITIAL_CAPACITY - 1;	//capacity is a power of 2
+
+	private double epsilon;
+	private DecayKernel decay;
+	private double horizon;		//spikes older than this are dropped
+
+	public SpikeHistory(double epsilon, DecayKernel decay) {
+		this.epsilon = epsilon;
+		this.decay = decay;
+		updateHorizon();
+	}
+
+	//0 keeps everything
+	public void setEpsilon(double epsilon) {
+		this.epsilon = epsilon;
+		updateHorizon();
+	}
+
+	public void setDecayKernel(DecayKernel decay) {
+		this.decay = decay;
+		updateHorizon();
+	}
+
+	private void updateHorizon() {
+		if(epsilon <= 0.0) {
+			horizon = Double.POSITIVE_INFINITY;
+		}
+		else {
+			horizon = Math.max(decay.getHorizon(epsilon), decay.getRecentSpikeCutoff());
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	///////////////////////////////////////////////////////
+
+	//0 is the oldest
+	public long getTime(int index) {
+		return times[(head + index) & mask];
+	}
+
+	public int getSource(int index) {
+		return sources[(head + index) & mask];
+	}
+
+	public boolean isSensory(int index) {
+		return sources[(head + index) & mask] == SENSORY;
+	}
+
+	public double getAmplitude(int index) {
+		return amplitudes[(head + index) & mask];
+	}
+
+	public boolean isPositive(int index) {
+		return positives[(head + index) & mask];
+	}
+
+	public int getSign(int index) {
+		return positives[(head + index) & mask] ? +1 : -1;
+	}
+
+	///////////////////////////////////////////////////////
+
+	public void addSensory(long time, double sensoryAmplitude, boolean isPositive) {
+		add(time, SENSORY, sensoryAmplitude, isPositive);
+	}
+
+	public void addSpike(long time, int source, boolean isPositive) {
+		add(time, source, 0.0, isPositive);
+	}
+
+	private void add(long time, int source, double amplitude, boolean isPositive) {
+		prune(time);
+
+		if(size == times.length) {
+			grow();
+		}
+
+		int idx = (head + size) & mask;
+		times[idx] = time;
+		sources[idx] = source;
+		amplitudes[idx] = amplitude;
+		positives[idx] = isPositive;
+		size++;
+	}
+
+	private void grow() {
+		int capacity = 2 * times.length;
+		long[] grownTimes = new long[capacity];
+		int[] grownSources = new int[capacity];
+		double[] grownAmplitudes = new double[capacity];
+		boolean[] grownPositives = new boolean[capacity];
+		for(int idx = 0; idx < size; idx++) {
+			int from = (head + idx) & mask;
+			grownTimes[idx] = times[from];
+			grownSources[idx] = sources[from];
+			grownAmplitudes[idx] = amplitudes[from];
+			grownPositives[idx] = positives[from];
+		}
+		times = grownTimes;
+		sources = grownSources;
+		amplitudes = grownAmplitudes;
+		positives = grownPositives;
+		head = 0;
+		mask = capacity - 1;
+	}
+
+	//drop the spikes that have decayed under epsilon by now
+	public void prune(long now) {
+		while(size > 0 && now - times[head] > horizon) {
+			head = (head + 1) & mask;
+			size--;
+		}
+	}
+
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	public int capacity() {
+		return times.length;
+	}
+}
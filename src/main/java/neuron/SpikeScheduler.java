@@ -0,0 +1,127 @@
+package neuron;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//event driven replacement for checking shouldSpike on every neuron every frame
+//
+//between inputs a neuron's potential only decays toward zero, so a neuron that was under its
+// threshold stays under it until something happens to it:
+//	it receives a sensory input or a spike
+//	its input weights change (learn)
+//only those neurons are re-checked, plus the ones that were over threshold and didn't spike out
+//this gives the same spikes as the full scan, with work that follows the spike activity
+//
+//the two phase frame is kept: findSpikingNeurons decides first, then spikeOut delivers
+//
+//inputs aren't queued: sensory input and spikes all arrive in the frame they're made in (there's no delay to schedule),
+// so they're applied right away, and only the neurons they reach are marked (by id, no allocation or hashing per input)
+//
+//a neuron's threshold and decay (setThreshold, setDecayCoefficient) must not change between reset() and the end of the run,
+// the scheduler doesn't see it, and a neuron that got closer to spiking that way wouldn't be checked
+//reset() checks every neuron again, so changing them between runs is fine
+public class SpikeScheduler {
+
+	private final List<Neuron> neurons;
+	private final Map<Neuron, Integer> ids = new HashMap<Neuron, Integer>();
+	private final int[][] outputIds;
+
+	//neurons whose potential may be over threshold, checked in list order like the full scan
+	private final BitSet pending = new BitSet();
+
+	private final List<Neuron> learnedNeurons = new ArrayList<Neuron>();
+
+	private long checkCount = 0;
+
+	public SpikeScheduler(List<Neuron> neurons) throws IOException {
+		this.neurons = neurons;
+		for(int id = 0; id < neurons.size(); id++) {
+			ids.put(neurons.get(id), id);
+		}
+		outputIds = new int[neurons.size()][];
+		for(int id = 0; id < neurons.size(); id++) {
+			Neuron n = neurons.get(id);
+			outputIds[id] = new int[n.getOutputs().size()];
+			int o = 0;
+			for(Neuron out : n.getOutputs()) {
+				Integer outId = ids.get(out);
+				if(outId == null) {
+					throw new IOException("output " + out.getName() + " of " + n.getName() + " is not part of this network");
+				}
+				outputIds[id][o++] = outId;
+			}
+		}
+		reset();
+	}
+
+	///////////////////////////////////////////////////////
+
+	//clears the input spikes of every neuron
+	public void reset() {
+		for(Neuron n : neurons) {
+			n.clearInputSpikes();
+		}
+		//first check looks at everyone (a threshold could be zero)
+		pending.set(0, neurons.size());
+		checkCount = 0;
+	}
+
+	//id is the index in the neuron list
+	public void addSensoryInput(int id, long now, double sensoryAmplitude, boolean isPositive) {
+		neurons.get(id).addSensoryInput(now, sensoryAmplitude, isPositive);
+		pending.set(id);
+	}
+
+	//number of shouldSpike calls since reset (the full scan would do neurons * frames)
+	public long getCheckCount() {
+		return checkCount;
+	}
+
+	///////////////////////////////////////////////////////
+
+	//which should spike this frame, as ids in list order, into spikeIds (at least neurons.size() long), returns how many
+	public int findSpikingNeurons(long now, int[] spikeIds) {
+		int spikeCount = 0;
+		for(int id = pending.nextSetBit(0); id >= 0; id = pending.nextSetBit(id+1)) {
+			checkCount++;
+			if(neurons.get(id).shouldSpike(now)) {
+				spikeIds[spikeCount++] = id;	//stays pending, until it spikes out or decays
+			}
+			else {
+				pending.clear(id);
+			}
+		}
+		return spikeCount;
+	}
+
+	public void spikeOut(int id, long now) {
+		neurons.get(id).spikeOut(now);
+		pending.clear(id);		//its potential was reset
+		for(int out : outputIds[id]) {
+			pending.set(out);
+		}
+	}
+
+	public void learn(Neuron n, long now, boolean positiveSpike, int maxLearningDepth) {
+		learnedNeurons.clear();
+		n.learn(now, positiveSpike, 0, maxLearningDepth, learnedNeurons);
+		markLearned();
+	}
+
+	public void learn(LearningWave wave, long now, int maxLearningDepth) {
+		learnedNeurons.clear();
+		wave.learn(now, maxLearningDepth, learnedNeurons);
+		markLearned();
+	}
+
+	//by index, so it doesn't make an iterator every frame
+	private void markLearned() {
+		for(int idx = 0; idx < learnedNeurons.size(); idx++) {
+			pending.set(ids.get(learnedNeurons.get(idx)));
+		}
+	}
+}
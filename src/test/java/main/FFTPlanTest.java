@@ -0,0 +1,111 @@
+package main;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class FFTPlanTest extends TestCase {
+
+	private static final int MAX_SIZE = 1024;
+
+	//allowed error of a bin, relative to the largest any bin could be (the sum of |x|)
+	private static final double TOLERANCE = 1e-12;
+
+	//X[k] = sum x[n] exp(-2*pi*i*k*n/N), straight from the definition
+	// (k*n is taken mod N first, so the angles are as exact as the FFT's twiddles)
+	static void dft(double[] re, double[] im, double[] outRe, double[] outIm) {
+		int N = re.length;
+		for(int k = 0; k < N; k++) {
+			double sumRe = 0.0;
+			double sumIm = 0.0;
+			for(int n = 0; n < N; n++) {
+				double angle = -2 * Math.PI * (((long) k * n) % N) / N;
+				sumRe += re[n] * Math.cos(angle) - im[n] * Math.sin(angle);
+				sumIm += re[n] * Math.sin(angle) + im[n] * Math.cos(angle);
+			}
+			outRe[k] = sumRe;
+			outIm[k] = sumIm;
+		}
+	}
+
+	static double sumAbs(double[] re, double[] im) {
+		double sum = 0.0;
+		for(int n = 0; n < re.length; n++) {
+			sum += Math.hypot(re[n], im[n]);
+		}
+		return sum;
+	}
+
+	//bins [0, bins) of actual against expected
+	static void assertBins(String what, double[] expectedRe, double[] expectedIm, double[] actualRe, double[] actualIm, int bins, double scale) {
+		for(int k = 0; k < bins; k++) {
+			assertEquals(what + " re[" + k + "]", expectedRe[k], actualRe[k], TOLERANCE * scale);
+			assertEquals(what + " im[" + k + "]", expectedIm[k], actualIm[k], TOLERANCE * scale);
+		}
+	}
+
+	public void testTransformMatchesDFT() {
+		Random random = new Random(0);
+		for(int size = 1; size <= MAX_SIZE; size *= 2) {
+			double[] re = new double[size];
+			double[] im = new double[size];
+			for(int n = 0; n < size; n++) {
+				re[n] = random.nextDouble() - 0.5;
+				im[n] = random.nextDouble() - 0.5;
+			}
+			double[] expectedRe = new double[size];
+			double[] expectedIm = new double[size];
+			dft(re, im, expectedRe, expectedIm);
+			double scale = sumAbs(re, im);
+
+			FFTPlan.of(size).transform(re, im);
+			assertBins("size " + size, expectedRe, expectedIm, re, im, size, scale);
+		}
+	}
+
+	//the Complex entry point goes through the same plans
+	public void testComplexFFTMatchesDFT() {
+		Random random = new Random(1);
+		for(int size = 1; size <= MAX_SIZE; size *= 2) {
+			double[] re = new double[size];
+			double[] im = new double[size];
+			Complex[] x = new Complex[size];
+			for(int n = 0; n < size; n++) {
+				re[n] = random.nextDouble() - 0.5;
+				im[n] = random.nextDouble() - 0.5;
+				x[n] = new Complex(re[n], im[n]);
+			}
+			double[] expectedRe = new double[size];
+			double[] expectedIm = new double[size];
+			dft(re, im, expectedRe, expectedIm);
+			double scale = sumAbs(re, im);
+
+			Complex[] y = HelperFunctions.fft(x);
+			for(int k = 0; k < size; k++) {
+				re[k] = y[k].re();
+				im[k] = y[k].im();
+			}
+			assertBins("size " + size, expectedRe, expectedIm, re, im, size, scale);
+		}
+	}
+
+	//only bins 0..size/2 are given, the rest mirror them
+	public void testRealTransformMatchesDFT() {
+		Random random = new Random(2);
+		for(int size = 1; size <= MAX_SIZE; size *= 2) {
+			double[] re = new double[size];
+			double[] im = new double[size];
+			for(int n = 0; n < size; n++) {
+				re[n] = random.nextDouble() - 0.5;
+				im[n] = random.nextDouble();		//ignored
+			}
+			double[] expectedRe = new double[size];
+			double[] expectedIm = new double[size];
+			dft(re, new double[size], expectedRe, expectedIm);
+			double scale = sumAbs(re, new double[size]);
+
+			FFTPlan.of(size).realTransform(re, im);
+			assertBins("size " + size, expectedRe, expectedIm, re, im, size/2 + 1, scale);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package main;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class GoertzelBankTest extends TestCase {
+
+	private static final int MAX_SIZE = 1024;
+
+	//allowed error of a magnitude, relative to the largest any bin could be (the sum of |x|)
+	// (the filter's error grows with the window, unlike the FFT's)
+	private static final double TOLERANCE = 1e-10;
+
+	//the window starts here in the samples, to check start is used
+	private static final int START = 3;
+
+	//0, size/2 and a few in between (every bin of the small sizes)
+	private static int[] makeBins(int size) {
+		if(size <= 8) {
+			int[] bins = new int[size];
+			for(int bin = 0; bin < size; bin++) {
+				bins[bin] = bin;
+			}
+			return bins;
+		}
+		return new int[] {0, 1, size/8, size/4 + 3, size/2 - 1, size/2, size - 1};
+	}
+
+	public void testMagnitudesMatchDFT() {
+		Random random = new Random(0);
+		for(int size = 1; size <= MAX_SIZE; size *= 2) {
+			short[] samples = new short[START + size + 5];
+			for(int n = 0; n < samples.length; n++) {
+				samples[n] = (short) (random.nextInt(2*Short.MAX_VALUE + 1) + Short.MIN_VALUE);
+			}
+
+			double[] re = new double[size];
+			double[] im = new double[size];
+			for(int n = 0; n < size; n++) {
+				re[n] = samples[START + n];
+			}
+			double[] expectedRe = new double[size];
+			double[] expectedIm = new double[size];
+			FFTPlanTest.dft(re, im, expectedRe, expectedIm);
+			double scale = FFTPlanTest.sumAbs(re, im);
+
+			int[] bins = makeBins(size);
+			double[] magnitudes = new double[bins.length];
+			new GoertzelBank(size, bins).magnitudes(samples, START, magnitudes);
+			for(int b = 0; b < bins.length; b++) {
+				assertEquals("size " + size + " bin " + bins[b],
+						Math.hypot(expectedRe[bins[b]], expectedIm[bins[b]]), magnitudes[b], TOLERANCE * scale);
+			}
+		}
+	}
+
+	//and against the real transform, which the bin list spectrogram picks between
+	public void testMagnitudesMatchRealTransform() {
+		Random random = new Random(1);
+		for(int size = 1; size <= MAX_SIZE; size *= 2) {
+			short[] samples = new short[size];
+			double[] re = new double[size];
+			double[] im = new double[size];
+			for(int n = 0; n < size; n++) {
+				samples[n] = (short) (random.nextInt(2*Short.MAX_VALUE + 1) + Short.MIN_VALUE);
+				re[n] = samples[n];
+			}
+			double scale = FFTPlanTest.sumAbs(re, im);
+			FFTPlan.of(size).realTransform(re, im);
+
+			int[] bins = new int[size/2 + 1];
+			for(int bin = 0; bin < bins.length; bin++) {
+				bins[bin] = bin;
+			}
+			double[] magnitudes = new double[bins.length];
+			new GoertzelBank(size, bins).magnitudes(samples, 0, magnitudes);
+			for(int bin = 0; bin < bins.length; bin++) {
+				assertEquals("size " + size + " bin " + bin, Math.hypot(re[bin], im[bin]), magnitudes[bin], TOLERANCE * scale);
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package main;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import neuron.Neuron;
+
+public class RasterPainterTest extends TestCase {
+
+	private static final int[] NUMBER_NEURONS_PER_LAYER_ARRAY = {12, 12, 4};
+	private static final int IMAGE_WIDTH = 800;
+	private static final int IMAGE_HEIGHT = 600;
+	private static final int NUMBER_OF_FRAMES = 20;
+
+	//neurons anywhere around the canvas, some partly off it
+	private static List<Neuron> makeNetwork(long seed) throws IOException {
+		Random random = new Random(seed);
+		List<Neuron> neurons = new ArrayList<Neuron>();
+		int neuronName = 0;
+		for(int layerIndex = 0; layerIndex < NUMBER_NEURONS_PER_LAYER_ARRAY.length; layerIndex++) {
+			for(int withinLayerIndex = 0; withinLayerIndex < NUMBER_NEURONS_PER_LAYER_ARRAY[layerIndex]; withinLayerIndex++) {
+				double x = HelperFunctions.randomRange(random, -Neuron.HALF_SIZE, IMAGE_WIDTH + Neuron.HALF_SIZE);
+				double y = HelperFunctions.randomRange(random, -Neuron.HALF_SIZE, IMAGE_HEIGHT + Neuron.HALF_SIZE);
+				neurons.add(new Neuron(neuronName++, layerIndex, Neuron.DEFAULT_THRESHOLD, x, y));
+			}
+		}
+		for(Neuron in : neurons) {
+			for(Neuron out : neurons) {
+				if(in.getLayer() + 1 == out.getLayer()) {
+					in.addOutputNeuron(out);
+					out.addInputNeuron(in, random.nextDouble() - 0.5);
+				}
+			}
+		}
+		for(Neuron n : neurons) {
+			n.normalizeInputWeights();
+		}
+		return neurons;
+	}
+
+	//one frame: sensory input of either sign into the first layer, spike, and learn on one output neuron
+	private static void step(List<Neuron> neurons, int frameIndex, Random input) {
+		for(int idx = 0; idx < NUMBER_NEURONS_PER_LAYER_ARRAY[0]; idx++) {
+			neurons.get(idx).addSensoryInput(frameIndex, input.nextDouble(), input.nextBoolean());
+		}
+
+		List<Neuron> spikeNeurons = new ArrayList<Neuron>();
+		for(Neuron n : neurons) {
+			if(n.shouldSpike(frameIndex)) {
+				spikeNeurons.add(n);
+			}
+		}
+		for(Neuron n : spikeNeurons) {
+			n.spikeOut(frameIndex);
+		}
+
+		neurons.get(neurons.size() - 1 - frameIndex % 4).learn(frameIndex, frameIndex % 3 != 0, 0, 2);
+	}
+
+	private static void paintReference(List<Neuron> neurons, long now, BufferedImage image) {
+		Graphics2D g = (Graphics2D) image.getGraphics();
+		g.setBackground(Color.BLACK);
+		for(Neuron n : neurons) {
+			n.paint(now, g);
+		}
+		g.dispose();
+	}
+
+	private static int countDifferentBytes(BufferedImage expected, BufferedImage actual) {
+		byte[] expectedData = ((DataBufferByte) expected.getRaster().getDataBuffer()).getData();
+		byte[] actualData = ((DataBufferByte) actual.getRaster().getDataBuffer()).getData();
+		int count = 0;
+		for(int idx = 0; idx < expectedData.length; idx++) {
+			if(expectedData[idx] != actualData[idx]) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	//frame after frame on the same canvases, so painting over the last frame is compared too
+	private static void assertMatchesNeuronPaint(ForkJoinPool pool, boolean fromSnapshots) throws IOException {
+		List<Neuron> neurons = makeNetwork(0);
+		int[] weightStart = new int[neurons.size() + 1];
+		for(int id = 0; id < neurons.size(); id++) {
+			weightStart[id+1] = weightStart[id] + neurons.get(id).getNumberOfInputs();
+		}
+		RasterPainter painter = new RasterPainter(neurons, pool);
+		BufferedImage expected = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+		BufferedImage actual = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+		Random input = new Random(1);
+
+		for(int frameIndex = 0; frameIndex < NUMBER_OF_FRAMES; frameIndex++) {
+			step(neurons, frameIndex, input);
+
+			paintReference(neurons, frameIndex, expected);
+			if(fromSnapshots) {
+				painter.paint(FrameSnapshot.take(neurons, frameIndex, weightStart), actual);
+			}
+			else {
+				painter.paint(frameIndex, actual);
+			}
+			assertEquals("bytes different from Neuron.paint at frame " + frameIndex, 0, countDifferentBytes(expected, actual));
+		}
+	}
+
+	public void testMatchesNeuronPaint() throws IOException {
+		assertMatchesNeuronPaint(null, false);
+	}
+
+	public void testMatchesNeuronPaintOnPool() throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertMatchesNeuronPaint(pool, true);
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package main;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import neuron.CompiledNetwork;
+import neuron.Neuron;
+import neuron.ParallelFrameStep;
+
+public class TrainingExampleTest extends TestCase {
+
+	private static final int[] NUMBER_NEURONS_PER_LAYER_ARRAY = {32, 32, 4};
+	private static final int AUDIO_SAMPLE_RATE = 44100;
+	private static final double FRAMES_PER_SECOND = 10.0;
+	private static final int NUMBER_OF_RUNNING_FRAMES = 30;
+	private static final int WINDOW_SIZE = 2048;
+	private static final double[] FREQUENCIES = {261.62, 329.63, 392.00, 523.25};
+	private static final int NUMBER_OF_RUNS = 16;
+	private static final int MAX_LEARNING_DEPTH = 3;
+
+	//allocation is compared between runs of these lengths, once warmed up
+	private static final int SHORT_RUNNING_FRAMES = 10;
+	private static final int WARM_UP_RUNS = 200;
+	private static final int MEASURED_RUNS = 10;
+
+	//same layout and weights for the same seed, the first layer are the sensory neurons
+	private static List<Neuron> makeNetwork(long seed) throws IOException {
+		Random random = new Random(seed);
+		List<Neuron> neurons = new ArrayList<Neuron>();
+		int neuronName = 0;
+		for(int layerIndex = 0; layerIndex < NUMBER_NEURONS_PER_LAYER_ARRAY.length; layerIndex++) {
+			for(int withinLayerIndex = 0; withinLayerIndex < NUMBER_NEURONS_PER_LAYER_ARRAY[layerIndex]; withinLayerIndex++) {
+				neurons.add(new Neuron(neuronName++, layerIndex, Neuron.DEFAULT_THRESHOLD, 20*withinLayerIndex, 100*layerIndex));
+			}
+		}
+		for(Neuron in : neurons) {
+			for(Neuron out : neurons) {
+				if(in.getLayer() + 1 == out.getLayer()) {
+					in.addOutputNeuron(out);
+					out.addInputNeuron(in, random.nextBoolean() ? +1 : -1);
+				}
+			}
+		}
+		for(Neuron n : neurons) {
+			n.normalizeInputWeights();
+		}
+		return neurons;
+	}
+
+	//a tone for each output neuron, which should spike for it, and the next one shouldn't
+	private static List<TrainingExample> makeExamples(List<Neuron> neurons) throws IOException {
+		return makeExamples(neurons, NUMBER_OF_RUNNING_FRAMES);
+	}
+
+	private static List<TrainingExample> makeExamples(List<Neuron> neurons, int numberOfRunningFrames) throws IOException {
+		int firstOutput = neurons.size() - FREQUENCIES.length;
+		List<TrainingExample> examples = new ArrayList<TrainingExample>();
+		for(int idx = 0; idx < FREQUENCIES.length; idx++) {
+			List<Short> tone = HelperFunctions.getAudioSamples(3*AUDIO_SAMPLE_RATE, FREQUENCIES[idx], AUDIO_SAMPLE_RATE, 0.2);
+			short[] samples = new short[tone.size()];
+			for(int sampleIndex = 0; sampleIndex < samples.length; sampleIndex++) {
+				samples[sampleIndex] = tone.get(sampleIndex);
+			}
+
+			List<Neuron> active = new ArrayList<Neuron>();
+			active.add(neurons.get(firstOutput + idx));
+			List<Neuron> unactive = new ArrayList<Neuron>();
+			unactive.add(neurons.get(firstOutput + (idx + 1) % FREQUENCIES.length));
+
+			examples.add(new TrainingExample(AUDIO_SAMPLE_RATE, FRAMES_PER_SECOND, numberOfRunningFrames, WINDOW_SIZE,
+					100.0, TimeUnit.MILLISECONDS, NUMBER_NEURONS_PER_LAYER_ARRAY[0], samples, neurons, active, unactive));
+		}
+		return examples;
+	}
+
+	//the examples in turn, headless
+	private static void train(List<TrainingExample> examples) throws IOException {
+		for(int run = 0; run < NUMBER_OF_RUNS; run++) {
+			examples.get(run % examples.size()).runNetwork(false, 0, MAX_LEARNING_DEPTH, null, null);
+		}
+	}
+
+	private static void assertSameWeights(List<Neuron> expected, List<Neuron> actual) {
+		for(int id = 0; id < expected.size(); id++) {
+			for(int idx = 0; idx < expected.get(id).getNumberOfInputs(); idx++) {
+				assertEquals("weight " + idx + " of " + id,
+						Double.doubleToLongBits(expected.get(id).getInputWeight(idx)),
+						Double.doubleToLongBits(actual.get(id).getInputWeight(idx)));
+			}
+		}
+	}
+
+	//potentials as of the end of the last run
+	private static void assertSamePotentials(List<Neuron> expected, List<Neuron> actual) {
+		for(int id = 0; id < expected.size(); id++) {
+			assertEquals("potential of " + id,
+					Double.doubleToLongBits(expected.get(id).getPotential(NUMBER_OF_RUNNING_FRAMES)),
+					Double.doubleToLongBits(actual.get(id).getPotential(NUMBER_OF_RUNNING_FRAMES)));
+		}
+	}
+
+	//so a test can't pass by nothing happening
+	private static void assertLearned(List<Neuron> trained) throws IOException {
+		List<Neuron> untrained = makeNetwork(0);
+		for(int id = 0; id < trained.size(); id++) {
+			for(int idx = 0; idx < trained.get(id).getNumberOfInputs(); idx++) {
+				if(trained.get(id).getInputWeight(idx) != untrained.get(id).getInputWeight(idx)) {
+					return;
+				}
+			}
+		}
+		fail("no weight changed");
+	}
+
+	///////////////////////////////////////////////////////
+
+	public void testCompiledNetworkMatchesNeurons() throws IOException {
+		List<Neuron> neurons = makeNetwork(0);
+		train(makeExamples(neurons));
+		assertLearned(neurons);
+
+		List<Neuron> compiledNeurons = makeNetwork(0);
+		List<TrainingExample> compiledExamples = makeExamples(compiledNeurons);
+		CompiledNetwork network = new CompiledNetwork(compiledNeurons);
+		for(int run = 0; run < NUMBER_OF_RUNS; run++) {
+			compiledExamples.get(run % compiledExamples.size()).runNetwork(network, MAX_LEARNING_DEPTH);
+		}
+		network.copyWeightsToNeurons();
+
+		assertSameWeights(neurons, compiledNeurons);
+	}
+
+	public void testEventDrivenMatchesFullScan() throws IOException {
+		List<Neuron> neurons = makeNetwork(0);
+		train(makeExamples(neurons));
+		assertLearned(neurons);
+
+		List<Neuron> eventNeurons = makeNetwork(0);
+		List<TrainingExample> eventExamples = makeExamples(eventNeurons);
+		for(TrainingExample example : eventExamples) {
+			example.setEventDriven(true);
+		}
+		train(eventExamples);
+
+		assertSameWeights(neurons, eventNeurons);
+	}
+
+	public void testParallelStepMatchesSerial() throws IOException {
+		List<Neuron> neurons = makeNetwork(0);
+		train(makeExamples(neurons));
+		assertLearned(neurons);
+
+		List<Neuron> parallelNeurons = makeNetwork(0);
+		List<TrainingExample> parallelExamples = makeExamples(parallelNeurons);
+		ParallelFrameStep parallelStep = new ParallelFrameStep(parallelNeurons, 4);
+		try {
+			for(TrainingExample example : parallelExamples) {
+				example.setParallelStep(parallelStep);
+			}
+			train(parallelExamples);
+		} finally {
+			parallelStep.getPool().shutdown();
+		}
+
+		assertSameWeights(neurons, parallelNeurons);
+		assertSamePotentials(neurons, parallelNeurons);
+	}
+
+	//bytes this thread allocates for the fewest of runs of example (after warming up), -1 if the JVM can't tell
+	private static long measureRunAllocation(TrainingExample example) throws IOException {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		if(!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		long threadId = Thread.currentThread().getId();
+
+		for(int run = 0; run < WARM_UP_RUNS; run++) {
+			example.runNetwork(false, 0, MAX_LEARNING_DEPTH, null, null);
+		}
+		long fewest = Long.MAX_VALUE;
+		for(int run = 0; run < MEASURED_RUNS; run++) {
+			long before = allocations.getThreadAllocatedBytes(threadId);
+			example.runNetwork(false, 0, MAX_LEARNING_DEPTH, null, null);
+			fewest = Math.min(fewest, allocations.getThreadAllocatedBytes(threadId) - before);
+		}
+		return fewest;
+	}
+
+	//a run may allocate a little to start, but then nothing per frame: a long run allocates as much as a short one
+	private static void assertNoAllocationPerFrame(String mode, boolean eventDriven, boolean waveLearning) throws IOException {
+		List<Neuron> neurons = makeNetwork(0);
+		TrainingExample shortExample = makeExamples(neurons, SHORT_RUNNING_FRAMES).get(0);
+		TrainingExample longExample = makeExamples(neurons, NUMBER_OF_RUNNING_FRAMES).get(0);
+		for(TrainingExample example : new TrainingExample[] {shortExample, longExample}) {
+			example.setEventDriven(eventDriven);
+			example.setWaveLearning(waveLearning);
+			example.setBatchedLearning(waveLearning);
+		}
+
+		long shortRun = measureRunAllocation(shortExample);
+		long longRun = measureRunAllocation(longExample);
+		if(shortRun < 0 || longRun < 0) {
+			return;		//can't be measured on this JVM
+		}
+		assertEquals(mode + ": bytes of a " + SHORT_RUNNING_FRAMES + " and a " + NUMBER_OF_RUNNING_FRAMES + " frame run", shortRun, longRun);
+	}
+
+	public void testRunAllocatesNothingPerFrame() throws IOException {
+		assertNoAllocationPerFrame("frame scan", false, false);
+		assertNoAllocationPerFrame("event driven", true, false);
+		assertNoAllocationPerFrame("batched wave learning", false, true);
+	}
+
+	//a streamed example reads its audio once, a second run would silently get no frames
+	public void testStreamedExampleRunsOnce() throws IOException {
+		List<Neuron> neurons = makeNetwork(0);
+		List<Short> tone = HelperFunctions.getAudioSamples(3*AUDIO_SAMPLE_RATE, FREQUENCIES[0], AUDIO_SAMPLE_RATE, 0.2);
+		short[] samples = new short[tone.size()];
+		for(int sampleIndex = 0; sampleIndex < samples.length; sampleIndex++) {
+			samples[sampleIndex] = tone.get(sampleIndex);
+		}
+
+		for(int path = 0; path < 2; path++) {
+			StreamingSpectrogram stream = new StreamingSpectrogram(new ShortBufferAudioSource(samples), AUDIO_SAMPLE_RATE, FRAMES_PER_SECOND,
+					WINDOW_SIZE, NUMBER_NEURONS_PER_LAYER_ARRAY[0], StreamingSpectrogram.Normalization.RUNNING_MAX);
+			TrainingExample example = new TrainingExample(stream, NUMBER_OF_RUNNING_FRAMES, 100.0, TimeUnit.MILLISECONDS,
+					NUMBER_NEURONS_PER_LAYER_ARRAY[0], neurons, new ArrayList<Neuron>(), new ArrayList<Neuron>());
+			CompiledNetwork network = new CompiledNetwork(neurons);
+			if(path == 0) {
+				example.runNetwork(false, 0, MAX_LEARNING_DEPTH, null, null);
+			}
+			else {
+				example.countSpikes(network, new int[network.size()]);
+			}
+			assertTrue("frames read " + stream.getFrameIndex(), stream.getFrameIndex() > 0);
+
+			try {
+				example.runNetwork(false, 0, MAX_LEARNING_DEPTH, null, null);
+				fail("second run of a streamed example");
+			} catch(IOException e) {
+			}
+			try {
+				example.runNetwork(network, MAX_LEARNING_DEPTH);
+				fail("second run of a streamed example");
+			} catch(IOException e) {
+			}
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package neuron;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LearningWaveTest extends TestCase {
+
+	private static final int[] NUMBER_NEURONS_PER_LAYER_ARRAY = {16, 16, 4};
+	private static final int NUMBER_OF_FRAMES = 200;
+	private static final int MAX_LEARNING_DEPTH = 3;
+
+	//layered: every input of a neuron is in the layer before it, same layout and weights for the same seed
+	private static List<Neuron> makeNetwork(long seed) throws IOException {
+		Random random = new Random(seed);
+		List<Neuron> neurons = new ArrayList<Neuron>();
+		int neuronName = 0;
+		for(int layerIndex = 0; layerIndex < NUMBER_NEURONS_PER_LAYER_ARRAY.length; layerIndex++) {
+			for(int withinLayerIndex = 0; withinLayerIndex < NUMBER_NEURONS_PER_LAYER_ARRAY[layerIndex]; withinLayerIndex++) {
+				neurons.add(new Neuron(neuronName++, layerIndex, Neuron.DEFAULT_THRESHOLD, 10*withinLayerIndex, 10*layerIndex));
+			}
+		}
+		for(Neuron in : neurons) {
+			for(Neuron out : neurons) {
+				if(in.getLayer() + 1 == out.getLayer()) {
+					in.addOutputNeuron(out);
+					out.addInputNeuron(in, random.nextDouble() - 0.5);
+				}
+			}
+		}
+		for(Neuron n : neurons) {
+			n.normalizeInputWeights();
+		}
+		return neurons;
+	}
+
+	//one frame without learning: sensory input into the first layer, and spike
+	private static void spike(List<Neuron> neurons, int frameIndex, Random input) {
+		for(int idx = 0; idx < NUMBER_NEURONS_PER_LAYER_ARRAY[0]; idx++) {
+			neurons.get(idx).addSensoryInput(frameIndex, input.nextDouble(), true);
+		}
+
+		List<Neuron> spikeNeurons = new ArrayList<Neuron>();
+		for(Neuron n : neurons) {
+			if(n.shouldSpike(frameIndex)) {
+				spikeNeurons.add(n);
+			}
+		}
+		for(Neuron n : spikeNeurons) {
+			n.spikeOut(frameIndex);
+		}
+	}
+
+	//an output neuron
+	private static int forcedId(List<Neuron> neurons, int frameIndex) {
+		return neurons.size() - 1 - frameIndex % NUMBER_NEURONS_PER_LAYER_ARRAY[NUMBER_NEURONS_PER_LAYER_ARRAY.length - 1];
+	}
+
+	private static boolean sameWeights(List<Neuron> expected, List<Neuron> actual) {
+		for(int id = 0; id < expected.size(); id++) {
+			for(int idx = 0; idx < expected.get(id).getNumberOfInputs(); idx++) {
+				if(Double.doubleToLongBits(expected.get(id).getInputWeight(idx)) != Double.doubleToLongBits(actual.get(id).getInputWeight(idx))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static void assertSameWeights(List<Neuron> expected, List<Neuron> actual) {
+		for(int id = 0; id < expected.size(); id++) {
+			for(int idx = 0; idx < expected.get(id).getNumberOfInputs(); idx++) {
+				assertEquals("weight " + idx + " of " + id,
+						Double.doubleToLongBits(expected.get(id).getInputWeight(idx)),
+						Double.doubleToLongBits(actual.get(id).getInputWeight(idx)));
+			}
+		}
+	}
+
+	///////////////////////////////////////////////////////
+
+	//with one forced neuron a layered network reaches every neuron once, at one level, like the recursive learn does
+	public void testOneForcedNeuronMatchesRecursiveLearn() throws IOException {
+		List<Neuron> recursive = makeNetwork(0);
+		List<Neuron> waved = makeNetwork(0);
+		LearningWave wave = new LearningWave(waved);
+		Random recursiveInput = new Random(1);
+		Random wavedInput = new Random(1);
+
+		for(int frameIndex = 0; frameIndex < NUMBER_OF_FRAMES; frameIndex++) {
+			spike(recursive, frameIndex, recursiveInput);
+			spike(waved, frameIndex, wavedInput);
+
+			int id = forcedId(recursive, frameIndex);
+			boolean positiveSpike = frameIndex % 3 != 0;
+			recursive.get(id).learn(frameIndex, positiveSpike, 0, MAX_LEARNING_DEPTH);
+			wave.add(id, positiveSpike);
+			wave.learn(frameIndex, MAX_LEARNING_DEPTH, null);
+		}
+
+		assertFalse("nothing learned", sameWeights(makeNetwork(0), waved));
+		assertSameWeights(recursive, waved);
+	}
+
+	//documented difference: a neuron in the forced lists twice is learned twice by the recursive learn, but once by the wave
+	public void testDuplicateForcedNeuronIsLearnedOnce() throws IOException {
+		List<Neuron> once = makeNetwork(0);
+		List<Neuron> twice = makeNetwork(0);
+		List<Neuron> waved = makeNetwork(0);
+		LearningWave wave = new LearningWave(waved);
+		Random onceInput = new Random(1);
+		Random twiceInput = new Random(1);
+		Random wavedInput = new Random(1);
+
+		for(int frameIndex = 0; frameIndex < NUMBER_OF_FRAMES; frameIndex++) {
+			spike(once, frameIndex, onceInput);
+			spike(twice, frameIndex, twiceInput);
+			spike(waved, frameIndex, wavedInput);
+
+			int id = forcedId(once, frameIndex);
+			boolean positiveSpike = frameIndex % 3 != 0;
+			once.get(id).learn(frameIndex, positiveSpike, 0, MAX_LEARNING_DEPTH);
+			twice.get(id).learn(frameIndex, positiveSpike, 0, MAX_LEARNING_DEPTH);
+			twice.get(id).learn(frameIndex, positiveSpike, 0, MAX_LEARNING_DEPTH);
+			wave.add(id, positiveSpike);
+			wave.add(id, positiveSpike);
+			wave.learn(frameIndex, MAX_LEARNING_DEPTH, null);
+		}
+
+		assertFalse("learning twice made no difference", sameWeights(once, twice));
+		assertSameWeights(once, waved);
+	}
+
+	//documented difference: opposite directions on the same neuron cancel, the recursive learn would learn both
+	public void testOppositeDirectionsCancel() throws IOException {
+		List<Neuron> unlearned = makeNetwork(0);
+		List<Neuron> waved = makeNetwork(0);
+		LearningWave wave = new LearningWave(waved);
+		Random unlearnedInput = new Random(1);
+		Random wavedInput = new Random(1);
+
+		for(int frameIndex = 0; frameIndex < NUMBER_OF_FRAMES; frameIndex++) {
+			spike(unlearned, frameIndex, unlearnedInput);
+			spike(waved, frameIndex, wavedInput);
+
+			int id = forcedId(waved, frameIndex);
+			wave.add(id, true);
+			wave.add(id, false);
+			wave.learn(frameIndex, MAX_LEARNING_DEPTH, null);
+		}
+
+		assertEquals(0, wave.getLearnCount());
+		assertSameWeights(unlearned, waved);
+	}
+
+	//the forced neurons don't overlap, and in a layered network each neuron is reached at one level only,
+	// so deferring the weight changes to the end of the frame changes nothing
+	public void testBatchedMatchesUnbatched() throws IOException {
+		List<Neuron> unbatched = makeNetwork(0);
+		List<Neuron> batched = makeNetwork(0);
+		LearningWave unbatchedWave = new LearningWave(unbatched);
+		LearningWave batchedWave = new LearningWave(batched);
+		batchedWave.setBatched(true);
+		Random unbatchedInput = new Random(1);
+		Random batchedInput = new Random(1);
+
+		for(int frameIndex = 0; frameIndex < NUMBER_OF_FRAMES; frameIndex++) {
+			spike(unbatched, frameIndex, unbatchedInput);
+			spike(batched, frameIndex, batchedInput);
+
+			//one output positive, another negative
+			int positiveId = forcedId(unbatched, frameIndex);
+			int negativeId = forcedId(unbatched, frameIndex + 1);
+			unbatchedWave.add(positiveId, true);
+			unbatchedWave.add(negativeId, false);
+			batchedWave.add(positiveId, true);
+			batchedWave.add(negativeId, false);
+			unbatchedWave.learn(frameIndex, MAX_LEARNING_DEPTH, null);
+			batchedWave.learn(frameIndex, MAX_LEARNING_DEPTH, null);
+		}
+
+		assertFalse("nothing learned", sameWeights(makeNetwork(0), batched));
+		assertEquals(unbatchedWave.getLearnCount(), batchedWave.getLearnCount());
+		assertSameWeights(unbatched, batched);
+	}
+}
@@ -0,0 +1,129 @@
+package neuron;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class NeuronTest extends TestCase {
+
+	private static final int[] NUMBER_NEURONS_PER_LAYER_ARRAY = {16, 16, 4};
+	private static final int NUMBER_OF_FRAMES = 200;
+
+	//same layout and weights for the same seed
+	private static List<Neuron> makeNetwork(long seed) throws IOException {
+		Random random = new Random(seed);
+		List<Neuron> neurons = new ArrayList<Neuron>();
+		int neuronName = 0;
+		for(int layerIndex = 0; layerIndex < NUMBER_NEURONS_PER_LAYER_ARRAY.length; layerIndex++) {
+			for(int withinLayerIndex = 0; withinLayerIndex < NUMBER_NEURONS_PER_LAYER_ARRAY[layerIndex]; withinLayerIndex++) {
+				neurons.add(new Neuron(neuronName++, layerIndex, Neuron.DEFAULT_THRESHOLD, 10*withinLayerIndex, 10*layerIndex));
+			}
+		}
+		for(Neuron in : neurons) {
+			for(Neuron out : neurons) {
+				if(in.getLayer() + 1 == out.getLayer()) {
+					in.addOutputNeuron(out);
+					out.addInputNeuron(in, random.nextDouble() - 0.5);
+				}
+			}
+		}
+		for(Neuron n : neurons) {
+			n.normalizeInputWeights();
+		}
+		return neurons;
+	}
+
+	//one frame: sensory input into the first layer, spike, and learn on one output neuron
+	private static void step(List<Neuron> neurons, int frameIndex, Random input) {
+		for(int idx = 0; idx < NUMBER_NEURONS_PER_LAYER_ARRAY[0]; idx++) {
+			neurons.get(idx).addSensoryInput(frameIndex, input.nextDouble(), true);
+		}
+
+		List<Neuron> spikeNeurons = new ArrayList<Neuron>();
+		for(Neuron n : neurons) {
+			if(n.shouldSpike(frameIndex)) {
+				spikeNeurons.add(n);
+			}
+		}
+		for(Neuron n : spikeNeurons) {
+			n.spikeOut(frameIndex);
+		}
+
+		neurons.get(neurons.size() - 1 - frameIndex % 4).learn(frameIndex, frameIndex % 3 != 0, 0, 2);
+	}
+
+	public void testIncrementalPotentialMatchesScan() throws IOException {
+		List<Neuron> incremental = makeNetwork(0);
+		List<Neuron> scanned = makeNetwork(0);
+		for(Neuron n : scanned) {
+			n.setIncrementalPotential(false);
+		}
+		Random incrementalInput = new Random(1);
+		Random scannedInput = new Random(1);
+
+		for(int frameIndex = 0; frameIndex < NUMBER_OF_FRAMES; frameIndex++) {
+			step(incremental, frameIndex, incrementalInput);
+			step(scanned, frameIndex, scannedInput);
+
+			for(int id = 0; id < incremental.size(); id++) {
+				assertEquals("potential of " + id + " at " + frameIndex,
+						scanned.get(id).getPotential(frameIndex), incremental.get(id).getPotential(frameIndex), 1e-9);
+			}
+		}
+
+		for(int id = 0; id < incremental.size(); id++) {
+			for(int idx = 0; idx < incremental.get(id).getNumberOfInputs(); idx++) {
+				assertEquals("weight " + idx + " of " + id,
+						scanned.get(id).getInputWeight(idx), incremental.get(id).getInputWeight(idx), 1e-9);
+			}
+		}
+	}
+
+	public void testPotentialCachingMatchesUncached() throws IOException {
+		List<Neuron> cached = makeNetwork(0);
+		List<Neuron> uncached = makeNetwork(0);
+		for(Neuron n : uncached) {
+			n.setPotentialCaching(false);
+		}
+		Random cachedInput = new Random(1);
+		Random uncachedInput = new Random(1);
+
+		for(int frameIndex = 0; frameIndex < NUMBER_OF_FRAMES; frameIndex++) {
+			step(cached, frameIndex, cachedInput);
+			step(uncached, frameIndex, uncachedInput);
+
+			//asked twice, like shouldSpike and paint do
+			for(int id = 0; id < cached.size(); id++) {
+				for(int ask = 0; ask < 2; ask++) {
+					assertEquals("potential of " + id + " at " + frameIndex,
+							Double.doubleToLongBits(uncached.get(id).getPotential(frameIndex)),
+							Double.doubleToLongBits(cached.get(id).getPotential(frameIndex)));
+				}
+			}
+		}
+
+		for(int id = 0; id < cached.size(); id++) {
+			for(int idx = 0; idx < cached.get(id).getNumberOfInputs(); idx++) {
+				assertEquals("weight " + idx + " of " + id,
+						Double.doubleToLongBits(uncached.get(id).getInputWeight(idx)),
+						Double.doubleToLongBits(cached.get(id).getInputWeight(idx)));
+			}
+		}
+
+		long cachedEvaluations = 0;
+		long savedEvaluations = 0;
+		long uncachedEvaluations = 0;
+		for(int id = 0; id < cached.size(); id++) {
+			cachedEvaluations += cached.get(id).getPotentialEvaluations();
+			savedEvaluations += cached.get(id).getSavedPotentialEvaluations();
+			uncachedEvaluations += uncached.get(id).getPotentialEvaluations();
+			assertEquals(0, uncached.get(id).getSavedPotentialEvaluations());
+		}
+		assertTrue("saved " + savedEvaluations, savedEvaluations > 0);
+		assertEquals(uncachedEvaluations, cachedEvaluations + savedEvaluations);
+		assertTrue("cached " + cachedEvaluations + " uncached " + uncachedEvaluations, cachedEvaluations < uncachedEvaluations);
+	}
+}
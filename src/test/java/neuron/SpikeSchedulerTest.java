@@ -0,0 +1,115 @@
+package neuron;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class SpikeSchedulerTest extends TestCase {
+
+	private static final int[] NUMBER_NEURONS_PER_LAYER_ARRAY = {16, 16, 4};
+	private static final int NUMBER_OF_FRAMES = 300;
+	private static final int MAX_LEARNING_DEPTH = 2;
+
+	//same layout and weights for the same seed
+	private static List<Neuron> makeNetwork(long seed) throws IOException {
+		Random random = new Random(seed);
+		List<Neuron> neurons = new ArrayList<Neuron>();
+		int neuronName = 0;
+		for(int layerIndex = 0; layerIndex < NUMBER_NEURONS_PER_LAYER_ARRAY.length; layerIndex++) {
+			for(int withinLayerIndex = 0; withinLayerIndex < NUMBER_NEURONS_PER_LAYER_ARRAY[layerIndex]; withinLayerIndex++) {
+				neurons.add(new Neuron(neuronName++, layerIndex, Neuron.DEFAULT_THRESHOLD, 10*withinLayerIndex, 10*layerIndex));
+			}
+		}
+		for(Neuron in : neurons) {
+			for(Neuron out : neurons) {
+				if(in.getLayer() + 1 == out.getLayer()) {
+					in.addOutputNeuron(out);
+					out.addInputNeuron(in, random.nextDouble() - 0.5);
+				}
+			}
+		}
+		for(Neuron n : neurons) {
+			n.normalizeInputWeights();
+		}
+		return neurons;
+	}
+
+	//sensory input into a few of the first layer (none on some frames), of either sign
+	// fills the ids and amplitudes to input this frame, returns how many
+	private static int makeInput(Random input, int[] inputIds, double[] amplitudes) {
+		if(input.nextInt(4) == 0) {
+			return 0;
+		}
+		int count = input.nextInt(4);
+		for(int idx = 0; idx < count; idx++) {
+			inputIds[idx] = input.nextInt(NUMBER_NEURONS_PER_LAYER_ARRAY[0]);
+			amplitudes[idx] = (input.nextBoolean() ? 1 : -1) * 2 * input.nextDouble();
+		}
+		return count;
+	}
+
+	public void testSameSpikesAndWeightsAsFullScan() throws IOException {
+		List<Neuron> scanned = makeNetwork(0);
+		List<Neuron> scheduled = makeNetwork(0);
+		SpikeScheduler scheduler = new SpikeScheduler(scheduled);
+		for(Neuron n : scanned) {
+			n.clearInputSpikes();		//as reset() does to the scheduled ones
+		}
+
+		Random input = new Random(1);
+		int[] inputIds = new int[4];
+		double[] amplitudes = new double[4];
+		int[] scannedIds = new int[scanned.size()];
+		int[] scheduledIds = new int[scheduled.size()];
+		int totalSpikes = 0;
+
+		for(int frameIndex = 0; frameIndex < NUMBER_OF_FRAMES; frameIndex++) {
+			int inputCount = makeInput(input, inputIds, amplitudes);
+			for(int idx = 0; idx < inputCount; idx++) {
+				scanned.get(inputIds[idx]).addSensoryInput(frameIndex, Math.abs(amplitudes[idx]), amplitudes[idx] > 0);
+				scheduler.addSensoryInput(inputIds[idx], frameIndex, Math.abs(amplitudes[idx]), amplitudes[idx] > 0);
+			}
+
+			int scannedCount = 0;
+			for(int id = 0; id < scanned.size(); id++) {
+				if(scanned.get(id).shouldSpike(frameIndex)) {
+					scannedIds[scannedCount++] = id;
+				}
+			}
+			int scheduledCount = scheduler.findSpikingNeurons(frameIndex, scheduledIds);
+			assertEquals("spikes at frame " + frameIndex,
+					Arrays.toString(Arrays.copyOf(scannedIds, scannedCount)), Arrays.toString(Arrays.copyOf(scheduledIds, scheduledCount)));
+			totalSpikes += scannedCount;
+
+			for(int idx = 0; idx < scannedCount; idx++) {
+				scanned.get(scannedIds[idx]).spikeOut(frameIndex);
+				scheduler.spikeOut(scheduledIds[idx], frameIndex);
+			}
+
+			//learning changes weights, so potentials can rise without input
+			if(frameIndex % 5 == 0) {
+				int id = scanned.size() - 1 - (frameIndex / 5) % 4;
+				boolean positiveSpike = frameIndex % 3 != 0;
+				scanned.get(id).learn(frameIndex, positiveSpike, 0, MAX_LEARNING_DEPTH);
+				scheduler.learn(scheduled.get(id), frameIndex, positiveSpike, MAX_LEARNING_DEPTH);
+			}
+		}
+		assertTrue("spikes " + totalSpikes, totalSpikes > 0);
+
+		for(int id = 0; id < scanned.size(); id++) {
+			for(int idx = 0; idx < scanned.get(id).getNumberOfInputs(); idx++) {
+				assertEquals("weight " + idx + " of " + id,
+						Double.doubleToLongBits(scanned.get(id).getInputWeight(idx)),
+						Double.doubleToLongBits(scheduled.get(id).getInputWeight(idx)));
+			}
+		}
+
+		//and it didn't look at everyone every frame
+		long fullScanChecks = (long) scanned.size() * NUMBER_OF_FRAMES;
+		assertTrue("checked " + scheduler.getCheckCount() + " of " + fullScanChecks, scheduler.getCheckCount() < fullScanChecks);
+	}
+}